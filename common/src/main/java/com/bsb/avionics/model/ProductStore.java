@@ -0,0 +1,609 @@
+/**
+ * 
+ */
+package com.bsb.avionics.model;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.stream.Collector;
+
+/**
+ * <p>
+ * Compact store of products grouped by Part Number, replacing a
+ * <code>Map&lt;String, Set&lt;Product&gt;&gt;</code> of beans. The products
+ * are kept column-wise in <code>int</code> arrays: each string is interned
+ * once in a dictionary and the columns hold its id. The products of a PN are
+ * chained through an <code>int</code> array, in their order of addition, and
+ * an identical product is kept once (the ids are compared, no
+ * {@link Product#equals(Object)}).
+ * </p>
+ * <p>
+ * The products are read back through {@link Product} views built on demand:
+ * {@link #asList()} and {@link #asMap()}. The store is not thread safe.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class ProductStore {
+
+	/**
+	 * <p>
+	 * Read-only view of the products of a PN.
+	 * </p>
+	 */
+	private class ProductGroup extends AbstractSet<Product> {
+
+		/**
+		 * <p>
+		 * The id of the PN.
+		 * </p>
+		 */
+		private int pn;
+
+		/**
+		 * <p>
+		 * Default constructor.
+		 * </p>
+		 * 
+		 * @param aPN
+		 *            the id of the PN.
+		 */
+		ProductGroup(int aPN) {
+			pn = aPN;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Iterator<Product> iterator() {
+			return new Iterator<Product>() {
+
+				private int row = firstByPN[pn];
+
+				@Override
+				public boolean hasNext() {
+					return row != NONE;
+				}
+
+				@Override
+				public Product next() {
+					if (row == NONE) {
+						throw new NoSuchElementException();
+					}
+					int current = row;
+					row = nextInPN[row];
+					return get(current);
+				}
+			};
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int size() {
+			int count = 0;
+			for (int row = firstByPN[pn]; row != NONE; row = nextInPN[row]) {
+				count++;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read-only view of the products, in a given order.
+	 * </p>
+	 */
+	private class ProductList extends AbstractList<Product> implements RandomAccess {
+
+		/**
+		 * <p>
+		 * The index of the products, in the order of the view.
+		 * </p>
+		 */
+		private int[] order;
+
+		/**
+		 * <p>
+		 * Default constructor.
+		 * </p>
+		 * 
+		 * @param someRows
+		 *            the index of the products, in the order of the view.
+		 */
+		ProductList(int[] someRows) {
+			order = someRows;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Product get(int anIndex) {
+			return ProductStore.this.get(order[anIndex]);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int size() {
+			return order.length;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Dictionary of strings, interning each string once and giving it an id
+	 * (the <code>null</code> string included). The ids are looked up in an open
+	 * addressing table; the hashes of the strings are cached with them.
+	 * </p>
+	 */
+	private static class StringDictionary {
+
+		/**
+		 * <p>
+		 * The hash of each string, by id.
+		 * </p>
+		 */
+		private int[] hashes = new int[INITIAL_CAPACITY];
+
+		/**
+		 * <p>
+		 * The id of the <code>null</code> string, {@link #NONE} until added.
+		 * </p>
+		 */
+		private int nullId = NONE;
+
+		/**
+		 * <p>
+		 * The number of strings.
+		 * </p>
+		 */
+		private int size;
+
+		/**
+		 * <p>
+		 * The strings, by id.
+		 * </p>
+		 */
+		private String[] strings = new String[INITIAL_CAPACITY];
+
+		/**
+		 * <p>
+		 * The open addressing table: the id + 1 of the strings, 0 for a free
+		 * slot. Its length is a power of 2, at least twice the number of
+		 * strings.
+		 * </p>
+		 */
+		private int[] table = new int[INITIAL_CAPACITY * 2];
+
+		/**
+		 * @param aString
+		 *            a new string.
+		 * @param aHash
+		 *            its hash.
+		 * @return the id of the string.
+		 */
+		private int append(String aString, int aHash) {
+			if (size == strings.length) {
+				strings = Arrays.copyOf(strings, grow(size));
+				hashes = Arrays.copyOf(hashes, strings.length);
+			}
+			strings[size] = aString;
+			hashes[size] = aHash;
+			return size++;
+		}
+
+		/**
+		 * @param aString
+		 *            a string.
+		 * @return the id of the string, {@link #NONE} if not in the dictionary.
+		 */
+		int find(String aString) {
+			if (aString == null) {
+				return nullId;
+			}
+			int hash = aString.hashCode();
+			int mask = table.length - 1;
+			for (int slot = mix(hash) & mask; table[slot] != 0; slot = slot + 1 & mask) {
+				int id = table[slot] - 1;
+				if (hashes[id] == hash && aString.equals(strings[id])) {
+					return id;
+				}
+			}
+			return NONE;
+		}
+
+		/**
+		 * @param anId
+		 *            the id of a string.
+		 * @return the string.
+		 */
+		String get(int anId) {
+			return strings[anId];
+		}
+
+		/**
+		 * <p>
+		 * Add a string to the dictionary if not already in it.
+		 * </p>
+		 * 
+		 * @param aString
+		 *            the string, may be <code>null</code>.
+		 * @return the id of the string.
+		 */
+		int intern(String aString) {
+			if (aString == null) {
+				if (nullId == NONE) {
+					nullId = append(null, 0);
+				}
+				return nullId;
+			}
+			int hash = aString.hashCode();
+			int mask = table.length - 1;
+			int slot = mix(hash) & mask;
+			for (; table[slot] != 0; slot = slot + 1 & mask) {
+				int id = table[slot] - 1;
+				if (hashes[id] == hash && aString.equals(strings[id])) {
+					return id;
+				}
+			}
+			int id = append(aString, hash);
+			table[slot] = id + 1;
+			if (size * 2 > table.length) {
+				rehash();
+			}
+			return id;
+		}
+
+		/**
+		 * <p>
+		 * Double the table, from the cached hashes.
+		 * </p>
+		 */
+		private void rehash() {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+			for (int id = 0; id < size; id++) {
+				if (id != nullId) {
+					int slot = mix(hashes[id]) & mask;
+					while (table[slot] != 0) {
+						slot = slot + 1 & mask;
+					}
+					table[slot] = id + 1;
+				}
+			}
+		}
+
+		/**
+		 * @return the number of strings.
+		 */
+		int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * <p>
+	 * The initial capacity of the arrays.
+	 * </p>
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * <p>
+	 * The end of a chain, or a missing id.
+	 * </p>
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * @param aCapacity
+	 *            the current capacity of an array.
+	 * @return the new capacity of the array.
+	 */
+	private static int grow(int aCapacity) {
+		return aCapacity + (aCapacity >> 1) + 1;
+	}
+
+	/**
+	 * @param aHash
+	 *            the hash of a string.
+	 * @return the hash with its high bits spread to the low ones.
+	 */
+	private static int mix(int aHash) {
+		int hash = aHash * 0x9E3779B9;
+		return hash ^ hash >>> 16;
+	}
+
+	/**
+	 * @return a collector grouping the products of a stream by Part Number in a
+	 *         store, in their order of encounter.
+	 */
+	public static Collector<Product, ?, ProductStore> toProductStore() {
+		return Collector.of(ProductStore::new, ProductStore::add, (left, right) -> {
+			right.asList().forEach(left::add);
+			return left;
+		});
+	}
+
+	/**
+	 * <p>
+	 * The text id of the alternate PN of each product.
+	 * </p>
+	 */
+	private int[] alternatePartNumbers = new int[INITIAL_CAPACITY];
+
+	/**
+	 * <p>
+	 * The text id of the description of each product.
+	 * </p>
+	 */
+	private int[] descriptions = new int[INITIAL_CAPACITY];
+
+	/**
+	 * <p>
+	 * The first product of each PN.
+	 * </p>
+	 */
+	private int[] firstByPN = new int[INITIAL_CAPACITY];
+
+	/**
+	 * <p>
+	 * The number of PNs.
+	 * </p>
+	 */
+	private int groupCount;
+
+	/**
+	 * <p>
+	 * The last product of each PN.
+	 * </p>
+	 */
+	private int[] lastByPN = new int[INITIAL_CAPACITY];
+
+	/**
+	 * <p>
+	 * The text id of the manufacturer of each product.
+	 * </p>
+	 */
+	private int[] manufacturers = new int[INITIAL_CAPACITY];
+
+	/**
+	 * <p>
+	 * The next product of the same PN, {@link #NONE} for the last one.
+	 * </p>
+	 */
+	private int[] nextInPN = new int[INITIAL_CAPACITY];
+
+	/**
+	 * <p>
+	 * The text id of the note of each product.
+	 * </p>
+	 */
+	private int[] notes = new int[INITIAL_CAPACITY];
+
+	/**
+	 * <p>
+	 * The PN id of each product.
+	 * </p>
+	 */
+	private int[] partNumberIds = new int[INITIAL_CAPACITY];
+
+	/**
+	 * <p>
+	 * The dictionary of the PNs: the id of a PN is the index of its group.
+	 * </p>
+	 */
+	private StringDictionary partNumbers = new StringDictionary();
+
+	/**
+	 * <p>
+	 * The number of products.
+	 * </p>
+	 */
+	private int size;
+
+	/**
+	 * <p>
+	 * The dictionary of the other strings (description, manufacturer, UOM,
+	 * note and alternate PN).
+	 * </p>
+	 */
+	private StringDictionary texts = new StringDictionary();
+
+	/**
+	 * <p>
+	 * The text id of the UOM of each product.
+	 * </p>
+	 */
+	private int[] units = new int[INITIAL_CAPACITY];
+
+	/**
+	 * <p>
+	 * Add a product to the store, unless an identical product is already
+	 * stored. The product is copied: it is not referenced by the store.
+	 * </p>
+	 * 
+	 * @param aProduct
+	 *            the product.
+	 * @return <code>true</code> if the product was added.
+	 */
+	public boolean add(Product aProduct) {
+		int pn = partNumbers.intern(aProduct.getPartNumber());
+		int description = texts.intern(aProduct.getDescription());
+		int manufacturer = texts.intern(aProduct.getManufacturer());
+		int unit = texts.intern(aProduct.getUnitOfMeasure());
+		int note = texts.intern(aProduct.getNote());
+		int alternatePartNumber = texts.intern(aProduct.getAlternatePartNumber());
+		if (pn == groupCount) {
+			// New PN (the ids are given in sequence).
+			if (pn == firstByPN.length) {
+				firstByPN = Arrays.copyOf(firstByPN, grow(pn));
+				lastByPN = Arrays.copyOf(lastByPN, firstByPN.length);
+			}
+			firstByPN[pn] = NONE;
+			groupCount++;
+		}
+		for (int row = firstByPN[pn]; row != NONE; row = nextInPN[row]) {
+			if (descriptions[row] == description && manufacturers[row] == manufacturer && units[row] == unit
+					&& notes[row] == note && alternatePartNumbers[row] == alternatePartNumber) {
+				return false;
+			}
+		}
+		if (size == partNumberIds.length) {
+			int capacity = grow(size);
+			partNumberIds = Arrays.copyOf(partNumberIds, capacity);
+			descriptions = Arrays.copyOf(descriptions, capacity);
+			manufacturers = Arrays.copyOf(manufacturers, capacity);
+			units = Arrays.copyOf(units, capacity);
+			notes = Arrays.copyOf(notes, capacity);
+			alternatePartNumbers = Arrays.copyOf(alternatePartNumbers, capacity);
+			nextInPN = Arrays.copyOf(nextInPN, capacity);
+		}
+		int row = size++;
+		partNumberIds[row] = pn;
+		descriptions[row] = description;
+		manufacturers[row] = manufacturer;
+		units[row] = unit;
+		notes[row] = note;
+		alternatePartNumbers[row] = alternatePartNumber;
+		nextInPN[row] = NONE;
+		if (firstByPN[pn] == NONE) {
+			firstByPN[pn] = row;
+		} else {
+			nextInPN[lastByPN[pn]] = row;
+		}
+		lastByPN[pn] = row;
+		return true;
+	}
+
+	/**
+	 * @return a read-only view of the products, grouped by PN (in the order
+	 *         the PNs were first added), as {@link Product} built on each
+	 *         access. The view reflects the products stored when it was
+	 *         created.
+	 */
+	public List<Product> asList() {
+		int[] order = new int[size];
+		int count = 0;
+		for (int pn = 0; pn < groupCount; pn++) {
+			for (int row = firstByPN[pn]; row != NONE; row = nextInPN[row]) {
+				order[count++] = row;
+			}
+		}
+		return new ProductList(order);
+	}
+
+	/**
+	 * @return a read-only view of the products by PN, as {@link Product}
+	 *         built on each access.
+	 */
+	public Map<String, Set<Product>> asMap() {
+		return new AbstractMap<String, Set<Product>>() {
+
+			@Override
+			public boolean containsKey(Object aKey) {
+				return findPN(aKey) != NONE;
+			}
+
+			@Override
+			public Set<Entry<String, Set<Product>>> entrySet() {
+				return new AbstractSet<Entry<String, Set<Product>>>() {
+
+					@Override
+					public Iterator<Entry<String, Set<Product>>> iterator() {
+						return new Iterator<Entry<String, Set<Product>>>() {
+
+							private int pn;
+
+							@Override
+							public boolean hasNext() {
+								return pn < groupCount;
+							}
+
+							@Override
+							public Entry<String, Set<Product>> next() {
+								if (pn >= groupCount) {
+									throw new NoSuchElementException();
+								}
+								int current = pn++;
+								return new SimpleImmutableEntry<>(partNumbers.get(current), new ProductGroup(current));
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return groupCount;
+					}
+				};
+			}
+
+			@Override
+			public Set<Product> get(Object aKey) {
+				int pn = findPN(aKey);
+				return pn == NONE ? null : new ProductGroup(pn);
+			}
+
+			@Override
+			public int size() {
+				return groupCount;
+			}
+		};
+	}
+
+	/**
+	 * @param aKey
+	 *            a PN.
+	 * @return the id of the PN, {@link #NONE} if not stored.
+	 */
+	private int findPN(Object aKey) {
+		if (aKey != null && !(aKey instanceof String)) {
+			return NONE;
+		}
+		return partNumbers.find((String) aKey);
+	}
+
+	/**
+	 * @param aRow
+	 *            the index of a product.
+	 * @return a new {@link Product} holding the values of the product.
+	 */
+	private Product get(int aRow) {
+		Product product = new Product();
+		product.setPartNumber(partNumbers.get(partNumberIds[aRow]));
+		product.setDescription(texts.get(descriptions[aRow]));
+		product.setManufacturer(texts.get(manufacturers[aRow]));
+		product.setUnitOfMeasure(texts.get(units[aRow]));
+		product.setNote(texts.get(notes[aRow]));
+		product.setAlternatePartNumber(texts.get(alternatePartNumbers[aRow]));
+		return product;
+	}
+
+	/**
+	 * @return the number of PNs.
+	 */
+	public int getPartNumberCount() {
+		return groupCount;
+	}
+
+	/**
+	 * @return the number of products.
+	 */
+	public int size() {
+		return size;
+	}
+}
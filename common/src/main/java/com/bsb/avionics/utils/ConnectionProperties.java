@@ -1,136 +1,334 @@
-/**
- * 
- */
-package com.bsb.avionics.utils;
-
-import java.io.IOException;
-import java.util.Properties;
-
-/**
- * @author Marc PEZZETTI
- *
- */
-public class ConnectionProperties {
-
-	/**
-	 * <p>
-	 * Unique instance of this class.
-	 * </p>
-	 */
-	private static final ConnectionProperties PROPERTIES = new ConnectionProperties();
-
-	/**
-	 * @return the singleton instance.
-	 */
-	public static ConnectionProperties getInstance() {
-		return PROPERTIES;
-	}
-
-	private Properties connectionProperties;
-
-	/**
-	 * <p>Default constructor.</p>
-	 */
-	private ConnectionProperties() {
-		connectionProperties = new Properties();
-		try {
-			connectionProperties.load(ConnectionProperties.class.getResourceAsStream("/conf/connection.properties"));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
-
-	/**
-	 * @return the description column name for the Access table.
-	 */
-	public String getAccessTableColumnDescription() {
-		return connectionProperties.getProperty("access.table.column.desc");
-	}
-
-	/**
-	 * @return the manufacturer column name for the Access table.
-	 */
-	public String getAccessTableColumnManufacturer() {
-		return connectionProperties.getProperty("access.table.column.manu");
-	}
-
-	/**
-	 * @return the note column name for the Access table.
-	 */
-	public String getAccessTableColumnNote() {
-		return connectionProperties.getProperty("access.table.column.note");
-	}
-
-	/**
-	 * @return the PN column name for the Access table.
-	 */
-	public String getAccessTableColumnPN() {
-		return connectionProperties.getProperty("access.table.column.pn");
-	}
-
-	/**
-	 * @return the UOM column name for the Access table.
-	 */
-	public String getAccessTableColumnUOM() {
-		return connectionProperties.getProperty("access.table.column.uom");
-	}
-
-	/**
-	 * @return the table name for the Access database.
-	 */
-	public String getAccessTableName() {
-		return connectionProperties.getProperty("access.table.name");
-	}
-
-	/**
-	 * @return the Oracle driver type to use.
-	 */
-	public String getDriverType() {
-		return connectionProperties.getProperty("oracle.driver.type");
-	}
-
-	/**
-	 * @return the host to use to connect to the Oracle DB.
-	 */
-	public String getHost() {
-		return connectionProperties.getProperty("oracle.host");
-	}
-
-	/**
-	 * @return the password to use for user authentication when connecting to the
-	 *         Oracle DB.
-	 */
-	public String getPassword() {
-		return connectionProperties.getProperty("oracle.passwd");
-	}
-
-	/**
-	 * @return the port to use to connect to the Oracle DB.
-	 */
-	public String getPort() {
-		return connectionProperties.getProperty("oracle.port");
-	}
-
-	/**
-	 * @param aKey
-	 *            the key to look for.
-	 * @return the property.
-	 */
-	public String getProperty(final String aKey) {
-		return connectionProperties.getProperty(aKey);
-	}
-
-	/**
-	 * @return the SID to connect to.
-	 */
-	public String getSID() {
-		return connectionProperties.getProperty("oracle.sid");
-	}
-
-	/**
-	 * @return the user to use to connect to the Oracle DB.
-	 */
-	public String getUser() {
-		return connectionProperties.getProperty("oracle.user");
-	}
-}
+/**
+ * 
+ */
+package com.bsb.avionics.utils;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * @author Marc PEZZETTI
+ *
+ */
+public class ConnectionProperties {
+
+	/**
+	 * <p>
+	 * Unique instance of this class.
+	 * </p>
+	 */
+	private static final ConnectionProperties PROPERTIES = new ConnectionProperties();
+
+	/**
+	 * @return the singleton instance.
+	 */
+	public static ConnectionProperties getInstance() {
+		return PROPERTIES;
+	}
+
+	private Properties connectionProperties;
+
+	/**
+	 * <p>Default constructor.</p>
+	 */
+	private ConnectionProperties() {
+		connectionProperties = new Properties();
+		try {
+			connectionProperties.load(ConnectionProperties.class.getResourceAsStream("/conf/connection.properties"));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the channel to open the Access database on: <code>file</code>
+	 *         (default) to read its pages from the disk or <code>memory</code>
+	 *         to load the whole file in memory first.
+	 */
+	public String getAccessChannel() {
+		String channel = connectionProperties.getProperty("import.access.channel");
+		return channel == null || channel.trim().isEmpty() ? "file" : channel.trim();
+	}
+
+	/**
+	 * @return the description column name for the Access table.
+	 */
+	public String getAccessTableColumnDescription() {
+		return connectionProperties.getProperty("access.table.column.desc");
+	}
+
+	/**
+	 * @return the manufacturer column name for the Access table.
+	 */
+	public String getAccessTableColumnManufacturer() {
+		return connectionProperties.getProperty("access.table.column.manu");
+	}
+
+	/**
+	 * @return the note column name for the Access table.
+	 */
+	public String getAccessTableColumnNote() {
+		return connectionProperties.getProperty("access.table.column.note");
+	}
+
+	/**
+	 * @return the PN column name for the Access table.
+	 */
+	public String getAccessTableColumnPN() {
+		return connectionProperties.getProperty("access.table.column.pn");
+	}
+
+	/**
+	 * @return the UOM column name for the Access table.
+	 */
+	public String getAccessTableColumnUOM() {
+		return connectionProperties.getProperty("access.table.column.uom");
+	}
+
+	/**
+	 * @return the table name for the Access database.
+	 */
+	public String getAccessTableName() {
+		return connectionProperties.getProperty("access.table.name");
+	}
+
+	/**
+	 * @return the number of products to send per JDBC batch, i.e. the initial
+	 *         commit interval (defaults to 100).
+	 */
+	public int getBatchSize() {
+		return getIntProperty("oracle.batch.size", 100);
+	}
+
+	/**
+	 * @return the commit latency (in ms) above which the commit interval is
+	 *         reduced (defaults to 1000).
+	 */
+	public int getCommitMaxLatency() {
+		return getIntProperty("oracle.commit.max.latency", 1000);
+	}
+
+	/**
+	 * @return the maximum number of products committed together (defaults to
+	 *         5000).
+	 */
+	public int getCommitMaxSize() {
+		return getIntProperty("oracle.commit.max.size", 5000);
+	}
+
+	/**
+	 * @return the minimum number of products committed together (defaults to
+	 *         10).
+	 */
+	public int getCommitMinSize() {
+		return getIntProperty("oracle.commit.min.size", 10);
+	}
+
+	/**
+	 * @return the Oracle driver type to use.
+	 */
+	public String getDriverType() {
+		return connectionProperties.getProperty("oracle.driver.type");
+	}
+
+	/**
+	 * @return the host to use to connect to the Oracle DB.
+	 */
+	public String getHost() {
+		return connectionProperties.getProperty("oracle.host");
+	}
+
+	/**
+	 * @return the maximum number of products waiting between the importer and the
+	 *         DAO in streaming mode (defaults to 10000).
+	 */
+	public int getImportQueueSize() {
+		return getIntProperty("import.queue.size", 10000);
+	}
+
+	/**
+	 * @param aKey
+	 *            the key to look for.
+	 * @param aDefaultValue
+	 *            the value to use when the property is missing or invalid.
+	 * @return the property as an integer.
+	 */
+	public int getIntProperty(final String aKey, final int aDefaultValue) {
+		String value = connectionProperties.getProperty(aKey);
+		if (value == null || value.trim().isEmpty()) {
+			return aDefaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException nfe) {
+			return aDefaultValue;
+		}
+	}
+
+	/**
+	 * @return the number of part numbers to look up per query (defaults to 500).
+	 */
+	public int getLookupSize() {
+		return getIntProperty("oracle.lookup.size", 500);
+	}
+
+	/**
+	 * @return the false positive rate of the part number filter (defaults to
+	 *         0.01).
+	 */
+	public double getPartNumberFilterFalsePositiveRate() {
+		String value = connectionProperties.getProperty("oracle.pn.filter.fpp");
+		try {
+			double rate = value == null ? 0.01 : Double.parseDouble(value.trim());
+			return rate > 0 && rate < 1 ? rate : 0.01;
+		} catch (NumberFormatException nfe) {
+			return 0.01;
+		}
+	}
+
+	/**
+	 * @return the file of the part number filter, empty (default) to look all
+	 *         the part numbers up.
+	 */
+	public String getPartNumberFilterFile() {
+		String file = connectionProperties.getProperty("oracle.pn.filter.file");
+		return file == null ? "" : file.trim();
+	}
+
+	/**
+	 * @return the number of days after which the part number filter is
+	 *         rebuilt from the DB (defaults to 7), 0 not to rebuild it by age.
+	 */
+	public int getPartNumberFilterMaxAge() {
+		return Math.max(0, getIntProperty("oracle.pn.filter.max.age", 7));
+	}
+
+	/**
+	 * @return the password to use for user authentication when connecting to the
+	 *         Oracle DB.
+	 */
+	public String getPassword() {
+		return connectionProperties.getProperty("oracle.passwd");
+	}
+
+	/**
+	 * @return the port to use to connect to the Oracle DB.
+	 */
+	public String getPort() {
+		return connectionProperties.getProperty("oracle.port");
+	}
+
+	/**
+	 * @return the compression of the product files written by the conversion:
+	 *         <code>none</code> (default) or <code>deflate</code>.
+	 */
+	public String getProductFileCompression() {
+		String compression = connectionProperties.getProperty("import.products.compression");
+		return compression == null || compression.trim().isEmpty() ? "none" : compression.trim();
+	}
+
+	/**
+	 * @param aKey
+	 *            the key to look for.
+	 * @return the property.
+	 */
+	public String getProperty(final String aKey) {
+		return connectionProperties.getProperty(aKey);
+	}
+
+	/**
+	 * @return the number of PARTS_MASTER rows fetched per round trip while
+	 *         reconciling (defaults to 10000).
+	 */
+	public int getReconcileFetchSize() {
+		return getIntProperty("oracle.reconcile.fetch.size", 10000);
+	}
+
+	/**
+	 * @return the SID to connect to.
+	 */
+	public String getSID() {
+		return connectionProperties.getProperty("oracle.sid");
+	}
+
+	/**
+	 * @return the number of sequence values to reserve per round trip (defaults
+	 *         to 100).
+	 */
+	public int getSequenceBlockSize() {
+		return getIntProperty("oracle.sequence.block.size", 100);
+	}
+
+	/**
+	 * @return the number of products kept in memory before a sorted run is
+	 *         spilled to disk; 0 (default) to keep all the products in memory.
+	 */
+	public int getSpillThreshold() {
+		return getIntProperty("import.spill.threshold", 0);
+	}
+
+	/**
+	 * @return the user to use to connect to the Oracle DB.
+	 */
+	public String getUser() {
+		return connectionProperties.getProperty("oracle.user");
+	}
+
+	/**
+	 * @return the title of the alternate PN column in the XLSX files (empty to use the
+	 *         default position).
+	 */
+	public String getXLSXColumnAlternatePN() {
+		return connectionProperties.getProperty("xlsx.column.alt");
+	}
+
+	/**
+	 * @return the title of the description column in the XLSX files (empty to use the
+	 *         default position).
+	 */
+	public String getXLSXColumnDescription() {
+		return connectionProperties.getProperty("xlsx.column.desc");
+	}
+
+	/**
+	 * @return the title of the manufacturer column in the XLSX files (empty to use the
+	 *         default position).
+	 */
+	public String getXLSXColumnManufacturer() {
+		return connectionProperties.getProperty("xlsx.column.manu");
+	}
+
+	/**
+	 * @return the title of the note column in the XLSX files (empty to use the
+	 *         default position).
+	 */
+	public String getXLSXColumnNote() {
+		return connectionProperties.getProperty("xlsx.column.note");
+	}
+
+	/**
+	 * @return the title of the PN column in the XLSX files (empty to use the
+	 *         default position).
+	 */
+	public String getXLSXColumnPN() {
+		return connectionProperties.getProperty("xlsx.column.pn");
+	}
+
+	/**
+	 * @return the title of the UOM column in the XLSX files (empty to use the
+	 *         default position).
+	 */
+	public String getXLSXColumnUOM() {
+		return connectionProperties.getProperty("xlsx.column.uom");
+	}
+
+	/**
+	 * @return the XLSX reader to use: <code>stax</code> (default) for the
+	 *         parallel StAX reader or <code>poi</code> for the POI streaming
+	 *         reader.
+	 */
+	public String getXLSXReader() {
+		String reader = connectionProperties.getProperty("import.xlsx.reader");
+		return reader == null || reader.trim().isEmpty() ? "stax" : reader.trim();
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * In-memory graph of the alternate links (ALTERNATES_PARTS_MASTER rows)
+ * written during a run: part identifier to alternate part identifier, to
+ * report the length of the alternate chains. Each link points to a part
+ * inserted by the run (a new key), so the graph holds neither duplicate links
+ * nor cycles. The links added since the last commit are tracked so that they
+ * can be forgotten if the transaction is rolled back.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class AlternatesGraph {
+
+	/**
+	 * <p>
+	 * The alternates of each part.
+	 * </p>
+	 */
+	private Map<Long, Set<Long>> alternatesByPart;
+
+	/**
+	 * <p>
+	 * The number of links committed.
+	 * </p>
+	 */
+	private int committedCount;
+
+	/**
+	 * <p>
+	 * The number of links pointing to each part (parts with no such link are
+	 * missing).
+	 * </p>
+	 */
+	private Map<Long, Integer> incomingCounts;
+
+	/**
+	 * <p>
+	 * The links added since the last commit, in insertion order: part
+	 * identifier, alternate part identifier.
+	 * </p>
+	 */
+	private List<long[]> pendingLinks;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 */
+	public AlternatesGraph() {
+		alternatesByPart = new HashMap<>();
+		pendingLinks = new ArrayList<>();
+		incomingCounts = new HashMap<>();
+	}
+
+	/**
+	 * <p>
+	 * Add a link.
+	 * </p>
+	 * 
+	 * @param aPartId
+	 *            the part identifier.
+	 * @param anAlternateId
+	 *            the alternate part identifier.
+	 */
+	public void add(long aPartId, long anAlternateId) {
+		alternatesByPart.computeIfAbsent(aPartId, part -> new HashSet<>(2)).add(anAlternateId);
+		incomingCounts.merge(anAlternateId, 1, Integer::sum);
+		pendingLinks.add(new long[] { aPartId, anAlternateId });
+	}
+
+	/**
+	 * <p>
+	 * The current transaction was committed: the added links are now permanent.
+	 * </p>
+	 */
+	public void commit() {
+		committedCount += pendingLinks.size();
+		pendingLinks.clear();
+	}
+
+	/**
+	 * @return the number of chains by length (number of links from a part
+	 *         nobody points to, to the end of its longest path).
+	 */
+	public Map<Integer, Integer> getChainLengths() {
+		Map<Long, Integer> depths = new HashMap<>();
+		Map<Integer, Integer> chainLengths = new TreeMap<>();
+		for (Long root : alternatesByPart.keySet()) {
+			if (!incomingCounts.containsKey(root)) {
+				chainLengths.merge(getDepth(root, depths), 1, Integer::sum);
+			}
+		}
+		return chainLengths;
+	}
+
+	/**
+	 * @param aPartId
+	 *            the part to start from.
+	 * @param someDepths
+	 *            the depths already computed, completed on the way.
+	 * @return the number of links of the longest path starting at this part.
+	 */
+	private int getDepth(Long aPartId, Map<Long, Integer> someDepths) {
+		// Iterative post-order walk: the chains can be long.
+		Deque<Long> stack = new ArrayDeque<>();
+		stack.push(aPartId);
+		while (!stack.isEmpty()) {
+			Long current = stack.peek();
+			if (someDepths.containsKey(current)) {
+				stack.pop();
+				continue;
+			}
+			int depth = 0;
+			boolean ready = true;
+			for (Long alternate : alternatesByPart.getOrDefault(current, Collections.emptySet())) {
+				Integer alternateDepth = someDepths.get(alternate);
+				if (alternateDepth == null) {
+					stack.push(alternate);
+					ready = false;
+				} else {
+					depth = Math.max(depth, alternateDepth + 1);
+				}
+			}
+			if (ready) {
+				someDepths.put(current, depth);
+				stack.pop();
+			}
+		}
+		return someDepths.get(aPartId);
+	}
+
+	/**
+	 * <p>
+	 * The current transaction was rolled back: forget the links added in it.
+	 * </p>
+	 */
+	public void rollback() {
+		rollback(committedCount);
+	}
+
+	/**
+	 * <p>
+	 * The current transaction was rolled back to a savepoint: forget the links
+	 * added since.
+	 * </p>
+	 * 
+	 * @param aSavepoint
+	 *            the value returned by {@link #savepoint()} when the savepoint
+	 *            was set.
+	 */
+	public void rollback(int aSavepoint) {
+		List<long[]> rolledBackLinks = pendingLinks.subList(Math.max(0, aSavepoint - committedCount),
+				pendingLinks.size());
+		for (long[] link : rolledBackLinks) {
+			Set<Long> alternates = alternatesByPart.get(link[0]);
+			alternates.remove(link[1]);
+			if (alternates.isEmpty()) {
+				alternatesByPart.remove(link[0]);
+			}
+			incomingCounts.computeIfPresent(link[1], (part, count) -> count == 1 ? null : count - 1);
+		}
+		rolledBackLinks.clear();
+	}
+
+	/**
+	 * @return a mark of the links added so far, to pass to
+	 *         {@link #rollback(int)}.
+	 */
+	public int savepoint() {
+		return size();
+	}
+
+	/**
+	 * @return the number of links.
+	 */
+	public int size() {
+		return committedCount + pendingLinks.size();
+	}
+}
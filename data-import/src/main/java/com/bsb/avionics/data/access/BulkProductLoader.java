@@ -0,0 +1,419 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * "Bulk" load strategy for full catalog refreshes. All the normalized products
+ * are array-inserted in the PARTS_STAGING global temporary table, then the
+ * manufacturers, UOMs, new parts and alternates are resolved with a few
+ * set-based statements following the rules of
+ * {@link ProductDAO#handleProductList(List)}:
+ * </p>
+ * <ul>
+ * <li>the first product (in file order) of a PN unknown in PARTS_MASTER is
+ * inserted as a new part;</li>
+ * <li>the first product of a known PN with a manufacturer not stored for that
+ * PN is inserted as an alternate part ('OCDIA') and linked to the first part of
+ * the PN;</li>
+ * <li>for both, the alternate PN (if any) is inserted as an alternate part and
+ * linked to the new part, unless the alternate PN - manufacturer combination
+ * already exists.</li>
+ * </ul>
+ * <p>
+ * A PN inserted as the alternate PN of an earlier product is known from then
+ * on, as when the products are handled one by one.
+ * </p>
+ * <p>
+ * Only plain JDBC and SQL shared by Oracle and H2 (in Oracle compatibility
+ * mode) are used, so the strategy can be run against an embedded DB.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class BulkProductLoader {
+
+	/**
+	 * <p>
+	 * Inserts the alternate parts (known PN, new manufacturer).
+	 * </p>
+	 */
+	private static final String ALTERNATE_INSERT = "INSERT INTO PARTS_MASTER (PNM_AUTO_KEY, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES, REMARKS, SERIALIZED) "
+			+ "SELECT PNM_AUTO_KEY, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES, 'OCDIA', 'F' "
+			+ "FROM PARTS_STAGING WHERE ACTION = 'A'";
+
+	/**
+	 * <p>
+	 * Links the alternate parts to the first part of their PN.
+	 * </p>
+	 */
+	private static final String ALT_LINK_INSERT = "INSERT INTO ALTERNATES_PARTS_MASTER (APM_AUTO_KEY, PNM_AUTO_KEY, ALT_PNM_AUTO_KEY) "
+			+ "SELECT G_APM_AUTO_KEY.NEXTVAL, BASE_PNM_AUTO_KEY, PNM_AUTO_KEY FROM PARTS_STAGING WHERE ACTION = 'A'";
+
+	/**
+	 * <p>
+	 * Inserts the parts for the alternate PNs.
+	 * </p>
+	 */
+	private static final String ALT_PN_INSERT = "INSERT INTO PARTS_MASTER (PNM_AUTO_KEY, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES, REMARKS, SERIALIZED) "
+			+ "SELECT ALT_PNM_AUTO_KEY, ALT_PN, ALT_PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES, 'OCDIA', 'F' "
+			+ "FROM PARTS_STAGING WHERE ALT_PNM_AUTO_KEY IS NOT NULL";
+
+	/**
+	 * <p>
+	 * Links the alternate PN parts to their part.
+	 * </p>
+	 */
+	private static final String ALT_PN_LINK_INSERT = "INSERT INTO ALTERNATES_PARTS_MASTER (APM_AUTO_KEY, PNM_AUTO_KEY, ALT_PNM_AUTO_KEY) "
+			+ "SELECT G_APM_AUTO_KEY.NEXTVAL, PNM_AUTO_KEY, ALT_PNM_AUTO_KEY FROM PARTS_STAGING WHERE ALT_PNM_AUTO_KEY IS NOT NULL";
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(BulkProductLoader.class);
+
+	/**
+	 * <p>
+	 * Marks the products needing an alternate part: first product of a known PN
+	 * - manufacturer combination missing from PARTS_MASTER, unless an earlier
+	 * product may insert that combination as its alternate PN. The PN is known
+	 * if stored, brought by an earlier product or by the alternate PN of an
+	 * earlier inserted product.
+	 * </p>
+	 */
+	private static final String MARK_ALTERNATES = "UPDATE PARTS_STAGING S SET ACTION = 'A', PNM_AUTO_KEY = G_PNM_AUTO_KEY.NEXTVAL "
+			+ "WHERE S.ACTION IS NULL "
+			+ "AND S.SEQ_NO = (SELECT MIN(T.SEQ_NO) FROM PARTS_STAGING T WHERE T.PN = S.PN AND T.MFG_AUTO_KEY = S.MFG_AUTO_KEY) "
+			+ "AND NOT EXISTS (SELECT 1 FROM PARTS_MASTER P WHERE P.PN = S.PN AND P.MFG_AUTO_KEY = S.MFG_AUTO_KEY) "
+			+ "AND (EXISTS (SELECT 1 FROM PARTS_MASTER P WHERE P.PN = S.PN) "
+			+ "OR EXISTS (SELECT 1 FROM PARTS_STAGING T WHERE T.PN = S.PN AND T.SEQ_NO < S.SEQ_NO) "
+			+ "OR EXISTS (SELECT 1 FROM PARTS_STAGING T WHERE T.ALT_PN = S.PN AND T.SEQ_NO < S.SEQ_NO AND T.ACTION IN ('N', 'A'))) "
+			+ "AND NOT EXISTS (SELECT 1 FROM PARTS_STAGING T WHERE T.ALT_PN = S.PN AND T.MFG_AUTO_KEY = S.MFG_AUTO_KEY "
+			+ "AND T.SEQ_NO < S.SEQ_NO AND (T.ACTION IS NULL OR T.ACTION <> 'D'))";
+
+	/**
+	 * <p>
+	 * Marks the alternate PNs to insert: first occurrence of an alternate PN -
+	 * manufacturer combination neither in PARTS_MASTER nor inserted as a part by
+	 * this load.
+	 * </p>
+	 */
+	private static final String MARK_ALTERNATE_PNS = "UPDATE PARTS_STAGING S SET ALT_PNM_AUTO_KEY = G_PNM_AUTO_KEY.NEXTVAL "
+			+ "WHERE S.ACTION IN ('N', 'A') AND S.ALT_PN IS NOT NULL "
+			+ "AND S.SEQ_NO = (SELECT MIN(T.SEQ_NO) FROM PARTS_STAGING T WHERE T.ALT_PN = S.ALT_PN AND T.MFG_AUTO_KEY = S.MFG_AUTO_KEY AND T.ACTION IN ('N', 'A')) "
+			+ "AND NOT EXISTS (SELECT 1 FROM PARTS_MASTER P WHERE P.PN = S.ALT_PN AND P.MFG_AUTO_KEY = S.MFG_AUTO_KEY) "
+			+ "AND NOT EXISTS (SELECT 1 FROM PARTS_STAGING T WHERE T.PN = S.ALT_PN AND T.MFG_AUTO_KEY = S.MFG_AUTO_KEY AND T.ACTION IN ('N', 'A'))";
+
+	/**
+	 * <p>
+	 * Marks the duplicates ('D'): PN - manufacturer combination stored,
+	 * brought by an earlier product or inserted as the alternate PN of an
+	 * earlier inserted product.
+	 * </p>
+	 */
+	private static final String MARK_DUPLICATES = "UPDATE PARTS_STAGING S SET ACTION = 'D' "
+			+ "WHERE S.ACTION IS NULL "
+			+ "AND (S.SEQ_NO > (SELECT MIN(T.SEQ_NO) FROM PARTS_STAGING T WHERE T.PN = S.PN AND T.MFG_AUTO_KEY = S.MFG_AUTO_KEY) "
+			+ "OR EXISTS (SELECT 1 FROM PARTS_MASTER P WHERE P.PN = S.PN AND P.MFG_AUTO_KEY = S.MFG_AUTO_KEY) "
+			+ "OR EXISTS (SELECT 1 FROM PARTS_STAGING T WHERE T.ALT_PN = S.PN AND T.MFG_AUTO_KEY = S.MFG_AUTO_KEY "
+			+ "AND T.SEQ_NO < S.SEQ_NO AND T.ACTION IN ('N', 'A')))";
+
+	/**
+	 * <p>
+	 * Marks the new parts: first product (in file order) of a PN unknown in
+	 * PARTS_MASTER, once all the earlier products having that PN as alternate PN
+	 * are known to be duplicates (else the PN is inserted as their alternate
+	 * PN).
+	 * </p>
+	 */
+	private static final String MARK_NEW_PARTS = "UPDATE PARTS_STAGING S SET ACTION = 'N', PNM_AUTO_KEY = G_PNM_AUTO_KEY.NEXTVAL "
+			+ "WHERE S.ACTION IS NULL "
+			+ "AND S.SEQ_NO = (SELECT MIN(T.SEQ_NO) FROM PARTS_STAGING T WHERE T.PN = S.PN) "
+			+ "AND NOT EXISTS (SELECT 1 FROM PARTS_MASTER P WHERE P.PN = S.PN) "
+			+ "AND NOT EXISTS (SELECT 1 FROM PARTS_STAGING T WHERE T.ALT_PN = S.PN AND T.SEQ_NO < S.SEQ_NO "
+			+ "AND (T.ACTION IS NULL OR T.ACTION <> 'D'))";
+
+	/**
+	 * <p>
+	 * Inserts the missing manufacturers.
+	 * </p>
+	 */
+	private static final String MFG_INSERT = "INSERT INTO MANUFACTURER (MFG_AUTO_KEY, DESCRIPTION, MFG_CODE) "
+			+ "SELECT G_MFG_AUTO_KEY.NEXTVAL, ' ', C.MFG_CODE FROM (SELECT DISTINCT S.MFG_CODE FROM PARTS_STAGING S "
+			+ "WHERE NOT EXISTS (SELECT 1 FROM MANUFACTURER M WHERE M.MFG_CODE = S.MFG_CODE)) C";
+
+	/**
+	 * <p>
+	 * Inserts the new parts.
+	 * </p>
+	 */
+	private static final String NEW_PART_INSERT = "INSERT INTO PARTS_MASTER (PNM_AUTO_KEY, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES) "
+			+ "SELECT PNM_AUTO_KEY, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES "
+			+ "FROM PARTS_STAGING WHERE ACTION = 'N'";
+
+	/**
+	 * <p>
+	 * Resolves the first part of the PN of the alternate parts, to link them:
+	 * stored part, new part or alternate PN part of an earlier product.
+	 * </p>
+	 */
+	private static final String RESOLVE_BASES = "UPDATE PARTS_STAGING S SET BASE_PNM_AUTO_KEY = COALESCE("
+			+ "(SELECT MIN(P.PNM_AUTO_KEY) FROM PARTS_MASTER P WHERE P.PN = S.PN), "
+			+ "(SELECT MIN(T.PNM_AUTO_KEY) FROM PARTS_STAGING T WHERE T.PN = S.PN AND T.ACTION = 'N'), "
+			+ "(SELECT MIN(T.ALT_PNM_AUTO_KEY) FROM PARTS_STAGING T WHERE T.ALT_PN = S.PN AND T.SEQ_NO < S.SEQ_NO)) "
+			+ "WHERE S.ACTION = 'A'";
+
+	/**
+	 * <p>
+	 * Resolves the manufacturer and UOM identifiers of the staged products.
+	 * </p>
+	 */
+	private static final String RESOLVE_CODES = "UPDATE PARTS_STAGING S SET "
+			+ "MFG_AUTO_KEY = (SELECT MIN(M.MFG_AUTO_KEY) FROM MANUFACTURER M WHERE M.MFG_CODE = S.MFG_CODE), "
+			+ "UOM_AUTO_KEY = (SELECT MIN(U.UOM_AUTO_KEY) FROM UOM_CODES U WHERE U.UOM_CODE = S.UOM_CODE)";
+
+	/**
+	 * <p>
+	 * Indexes the staging table on the alternate PN.
+	 * </p>
+	 */
+	private static final String STAGING_ALT_INDEX = "CREATE INDEX PARTS_STAGING_ALT_PN ON PARTS_STAGING (ALT_PN, SEQ_NO)";
+
+	/**
+	 * <p>
+	 * Empties the staging table.
+	 * </p>
+	 */
+	private static final String STAGING_CLEAR = "DELETE FROM PARTS_STAGING";
+
+	/**
+	 * <p>
+	 * Creates the staging table (Oracle global temporary table, one private
+	 * content per session).
+	 * </p>
+	 */
+	private static final String STAGING_CREATE = "CREATE GLOBAL TEMPORARY TABLE PARTS_STAGING ("
+			+ "SEQ_NO NUMBER NOT NULL, PN VARCHAR2(40), PN_UPPER VARCHAR2(40), DESCRIPTION VARCHAR2(50), "
+			+ "DESCRIPTION_UPPER VARCHAR2(50), MFG_CODE VARCHAR2(20), UOM_CODE VARCHAR2(255), NOTES VARCHAR2(4000), "
+			+ "ALT_PN VARCHAR2(40), ALT_PN_UPPER VARCHAR2(40), MFG_AUTO_KEY NUMBER, UOM_AUTO_KEY NUMBER, "
+			+ "ACTION CHAR(1), PNM_AUTO_KEY NUMBER, BASE_PNM_AUTO_KEY NUMBER, ALT_PNM_AUTO_KEY NUMBER) "
+			+ "ON COMMIT PRESERVE ROWS";
+
+	/**
+	 * <p>
+	 * Indexes the staging table on the PN.
+	 * </p>
+	 */
+	private static final String STAGING_INDEX = "CREATE INDEX PARTS_STAGING_PN ON PARTS_STAGING (PN, MFG_AUTO_KEY)";
+
+	/**
+	 * <p>
+	 * Array-inserts the normalized products in the staging table.
+	 * </p>
+	 */
+	private static final String STAGING_INSERT = "INSERT INTO PARTS_STAGING (SEQ_NO, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_CODE, UOM_CODE, NOTES, ALT_PN, ALT_PN_UPPER) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * <p>
+	 * Inserts the missing UOMs.
+	 * </p>
+	 */
+	private static final String UOM_INSERT = "INSERT INTO UOM_CODES (UOM_AUTO_KEY, UOM_CODE) "
+			+ "SELECT G_UOM_AUTO_KEY.NEXTVAL, C.UOM_CODE FROM (SELECT DISTINCT S.UOM_CODE FROM PARTS_STAGING S "
+			+ "WHERE NOT EXISTS (SELECT 1 FROM UOM_CODES U WHERE U.UOM_CODE = S.UOM_CODE)) C";
+
+	/**
+	 * <p>
+	 * The number of products sent per staging batch.
+	 * </p>
+	 */
+	private int batchSize;
+
+	/**
+	 * <p>
+	 * The connection to use (auto-commit disabled).
+	 * </p>
+	 */
+	private Connection connection;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aConnection
+	 *            the connection to use (auto-commit disabled).
+	 * @param aBatchSize
+	 *            the number of products sent per staging batch.
+	 */
+	public BulkProductLoader(Connection aConnection, int aBatchSize) {
+		connection = aConnection;
+		batchSize = Math.max(1, aBatchSize);
+	}
+
+	/**
+	 * <p>
+	 * Create the staging table if it doesn't exist yet.
+	 * </p>
+	 * 
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private void createStagingTable() throws SQLException {
+		boolean exists;
+		try (ResultSet tables = connection.getMetaData().getTables(null, null, "PARTS_STAGING", null)) {
+			exists = tables.next();
+		}
+		if (!exists) {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute(STAGING_CREATE);
+				statement.execute(STAGING_INDEX);
+				statement.execute(STAGING_ALT_INDEX);
+			}
+			LOGGER.info("Staging table PARTS_STAGING created.");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Execute one of the set-based steps.
+	 * </p>
+	 * 
+	 * @param aStep
+	 *            the name of the step (for the logs).
+	 * @param aSql
+	 *            the statement to execute.
+	 * @return the number of rows updated or inserted.
+	 * @throws SQLException
+	 *             if an error occurs while executing the statement.
+	 */
+	private int execute(String aStep, String aSql) throws SQLException {
+		long t0 = System.currentTimeMillis();
+		int count;
+		try (Statement statement = connection.createStatement()) {
+			count = statement.executeUpdate(aSql);
+		}
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info(aStep + ": " + count + " rows in " + (System.currentTimeMillis() - t0) + " ms.");
+		}
+		return count;
+	}
+
+	/**
+	 * <b>Load the given {@link Product} list in a single transaction.</b>
+	 * 
+	 * @param aProductList
+	 *            the product list to use.
+	 * @throws SQLException
+	 *             if an error occurs; the transaction is rolled back.
+	 */
+	public void load(List<Product> aProductList) throws SQLException {
+		createStagingTable();
+		try {
+			execute("Staging cleared", STAGING_CLEAR);
+			stage(aProductList);
+			execute("Manufacturers inserted", MFG_INSERT);
+			execute("UOMs inserted", UOM_INSERT);
+			execute("Codes resolved", RESOLVE_CODES);
+			markProducts();
+			execute("Alternate PNs marked", MARK_ALTERNATE_PNS);
+			execute("Alternate bases resolved", RESOLVE_BASES);
+			execute("New parts inserted", NEW_PART_INSERT);
+			execute("Alternate parts inserted", ALTERNATE_INSERT);
+			execute("Alternate PN parts inserted", ALT_PN_INSERT);
+			execute("Alternate links inserted", ALT_LINK_INSERT);
+			execute("Alternate PN links inserted", ALT_PN_LINK_INSERT);
+			execute("Staging cleared", STAGING_CLEAR);
+			connection.commit();
+		} catch (SQLException sqle) {
+			connection.rollback();
+			throw sqle;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Mark the staged products as new part, alternate part or duplicate. A
+	 * product depends on the earlier products having its PN as alternate PN,
+	 * so the marking is repeated until no product is left to mark: the
+	 * products are resolved in file order, as by the row-by-row import, in as
+	 * many rounds as the longest chain of such alternate PNs.
+	 * </p>
+	 * 
+	 * @throws SQLException
+	 *             if an error occurs while executing the statements.
+	 */
+	private void markProducts() throws SQLException {
+		int round = 0;
+		int markedCount;
+		do {
+			round++;
+			markedCount = execute("New parts marked (round " + round + ")", MARK_NEW_PARTS)
+					+ execute("Alternates marked (round " + round + ")", MARK_ALTERNATES)
+					+ execute("Duplicates marked (round " + round + ")", MARK_DUPLICATES);
+		} while (markedCount > 0);
+	}
+
+	/**
+	 * <p>
+	 * Array-insert the normalized products in the staging table, keeping their
+	 * order.
+	 * </p>
+	 * 
+	 * @param aProductList
+	 *            the products to stage.
+	 * @throws SQLException
+	 *             if an error occurs while inserting.
+	 */
+	private void stage(List<Product> aProductList) throws SQLException {
+		long t0 = System.currentTimeMillis();
+		try (PreparedStatement statement = connection.prepareStatement(STAGING_INSERT)) {
+			int sequence = 0;
+			for (Product currentProduct : aProductList) {
+				NormalizedProduct product = NormalizedProduct.of(currentProduct);
+				statement.setInt(1, ++sequence);
+				statement.setString(2, product.getTruncatedPN());
+				statement.setString(3, product.getUpperPN());
+				statement.setString(4, product.getTruncatedDescription());
+				statement.setString(5, product.getUpperDescription());
+				statement.setString(6, product.getTruncatedManufacturer());
+				statement.setString(7, product.getUnitOfMeasure());
+				statement.setString(8, product.getNote());
+				if (product.getTruncatedAlternatePN() != null) {
+					statement.setString(9, product.getTruncatedAlternatePN());
+					statement.setString(10, product.getUpperAlternatePN());
+				} else {
+					statement.setNull(9, Types.VARCHAR);
+					statement.setNull(10, Types.VARCHAR);
+				}
+				statement.addBatch();
+				if (sequence % batchSize == 0) {
+					statement.executeBatch();
+				}
+			}
+			statement.executeBatch();
+		}
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("Products staged: " + aProductList.size() + " in " + (System.currentTimeMillis() - t0)
+					+ " ms.");
+		}
+	}
+}
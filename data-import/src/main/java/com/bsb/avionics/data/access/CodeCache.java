@@ -0,0 +1,172 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import oracle.jdbc.OraclePreparedStatement;
+import oracle.jdbc.OracleResultSet;
+import oracle.sql.NUMBER;
+
+/**
+ * <p>
+ * In-memory dictionary of a code table (e.g. MANUFACTURER or UOM_CODES): code
+ * to identifier. It is loaded once from the DB and updated on every insert.
+ * The codes inserted since the last commit are tracked so that they can be
+ * forgotten if the transaction is rolled back.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class CodeCache {
+
+	/**
+	 * <p>
+	 * The fetch size to use while loading the table.
+	 * </p>
+	 */
+	private static final int LOAD_FETCH_SIZE = 1000;
+
+	/**
+	 * <p>
+	 * The identifiers by code.
+	 * </p>
+	 */
+	private Map<String, NUMBER> identifiers;
+
+	/**
+	 * <p>
+	 * The codes inserted in the current transaction, in insertion order.
+	 * </p>
+	 */
+	private List<String> uncommittedCodes;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 */
+	public CodeCache() {
+		identifiers = new HashMap<>();
+		uncommittedCodes = new ArrayList<>();
+	}
+
+	/**
+	 * <p>
+	 * The current transaction was committed: the inserted codes are now
+	 * permanent.
+	 * </p>
+	 */
+	public void commit() {
+		uncommittedCodes.clear();
+	}
+
+	/**
+	 * @param aCode
+	 *            the code to look for.
+	 * @return the identifier of the code or <code>null</code> if unknown.
+	 */
+	public NUMBER get(String aCode) {
+		return identifiers.get(aCode);
+	}
+
+	/**
+	 * <p>
+	 * Load the whole table.
+	 * </p>
+	 * 
+	 * @param aConnection
+	 *            the connection to use.
+	 * @param aQuery
+	 *            the query returning the code (1st column) and the identifier
+	 *            (2nd column) of every row.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	public void load(Connection aConnection, String aQuery) throws SQLException {
+		try (OraclePreparedStatement statement = (OraclePreparedStatement) aConnection.prepareStatement(aQuery);) {
+			statement.setFetchSize(LOAD_FETCH_SIZE);
+			try (OracleResultSet result = (OracleResultSet) statement.executeQuery();) {
+				while (result.next()) {
+					identifiers.putIfAbsent(result.getString(1), result.getNUMBER(2));
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Register a code found in the DB.
+	 * </p>
+	 * 
+	 * @param aCode
+	 *            the code.
+	 * @param anIdentifier
+	 *            its identifier.
+	 */
+	public void put(String aCode, NUMBER anIdentifier) {
+		identifiers.put(aCode, anIdentifier);
+	}
+
+	/**
+	 * <p>
+	 * Register a code inserted in the current transaction.
+	 * </p>
+	 * 
+	 * @param aCode
+	 *            the code.
+	 * @param anIdentifier
+	 *            its identifier.
+	 */
+	public void putInserted(String aCode, NUMBER anIdentifier) {
+		identifiers.put(aCode, anIdentifier);
+		uncommittedCodes.add(aCode);
+	}
+
+	/**
+	 * <p>
+	 * The current transaction was rolled back: forget the codes inserted in it.
+	 * </p>
+	 */
+	public void rollback() {
+		rollback(0);
+	}
+
+	/**
+	 * <p>
+	 * The current transaction was rolled back to a savepoint: forget the codes
+	 * inserted since.
+	 * </p>
+	 * 
+	 * @param aSavepoint
+	 *            the value returned by {@link #savepoint()} when the savepoint
+	 *            was set.
+	 */
+	public void rollback(int aSavepoint) {
+		List<String> rolledBackCodes = uncommittedCodes.subList(aSavepoint, uncommittedCodes.size());
+		identifiers.keySet().removeAll(rolledBackCodes);
+		rolledBackCodes.clear();
+	}
+
+	/**
+	 * @return a mark of the codes inserted so far in the current transaction,
+	 *         to pass to {@link #rollback(int)}.
+	 */
+	public int savepoint() {
+		return uncommittedCodes.size();
+	}
+
+	/**
+	 * @return the number of known codes.
+	 */
+	public int size() {
+		return identifiers.size();
+	}
+}
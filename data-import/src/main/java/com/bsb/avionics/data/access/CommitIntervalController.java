@@ -0,0 +1,161 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * <p>
+ * Adaptive number of products to commit together. After each commit, the
+ * interval keeps moving in the same direction (growing or shrinking by a
+ * quarter) while the throughput of the rounds improves and turns back when it
+ * degrades. A commit slower than the maximum latency or a failed round always
+ * shrinks it. The interval stays within the configured bounds.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class CommitIntervalController {
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(CommitIntervalController.class);
+
+	/**
+	 * <p>
+	 * The relative throughput loss tolerated before turning back (measurement
+	 * noise).
+	 * </p>
+	 */
+	private static final double THROUGHPUT_TOLERANCE = 0.05;
+
+	/**
+	 * <p>
+	 * <code>true</code> while the interval is growing.
+	 * </p>
+	 */
+	private boolean growing;
+
+	/**
+	 * <p>
+	 * The current number of products to commit together.
+	 * </p>
+	 */
+	private int interval;
+
+	/**
+	 * <p>
+	 * The throughput of the previous round, in products per second.
+	 * </p>
+	 */
+	private double lastThroughput;
+
+	/**
+	 * <p>
+	 * The commit latency above which the interval is reduced, in nanoseconds.
+	 * </p>
+	 */
+	private long maxLatency;
+
+	/**
+	 * <p>
+	 * The maximum interval.
+	 * </p>
+	 */
+	private int maxSize;
+
+	/**
+	 * <p>
+	 * The minimum interval.
+	 * </p>
+	 */
+	private int minSize;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param anInitialSize
+	 *            the interval to start with.
+	 * @param aMinSize
+	 *            the minimum interval.
+	 * @param aMaxSize
+	 *            the maximum interval.
+	 * @param aMaxLatency
+	 *            the commit latency above which the interval is reduced, in
+	 *            milliseconds.
+	 */
+	public CommitIntervalController(int anInitialSize, int aMinSize, int aMaxSize, int aMaxLatency) {
+		minSize = Math.max(1, aMinSize);
+		maxSize = Math.max(minSize, aMaxSize);
+		interval = Math.min(maxSize, Math.max(minSize, anInitialSize));
+		maxLatency = aMaxLatency * 1000000L;
+		growing = true;
+	}
+
+	/**
+	 * @return the current number of products to commit together.
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * <p>
+	 * Adapt the interval after a successful commit.
+	 * </p>
+	 * 
+	 * @param aProductCount
+	 *            the number of products committed.
+	 * @param aRoundDuration
+	 *            the time spent on the round (handling and commit), in
+	 *            nanoseconds.
+	 * @param aCommitDuration
+	 *            the time spent executing the batches and committing, in
+	 *            nanoseconds.
+	 */
+	public void onCommit(int aProductCount, long aRoundDuration, long aCommitDuration) {
+		if (aProductCount < interval) {
+			// Last (partial) round of a list: not representative.
+			return;
+		}
+		double throughput = aProductCount * 1e9 / Math.max(1L, aRoundDuration);
+		if (aCommitDuration > maxLatency) {
+			growing = false;
+		} else if (throughput < lastThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+			growing = !growing;
+		}
+		lastThroughput = throughput;
+		resize(growing ? interval + Math.max(1, interval / 4) : interval - interval / 4);
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Round of " + aProductCount + " products: " + Math.round(throughput) + " products/s, commit in "
+					+ aCommitDuration / 1000000L + " ms. Next commit interval: " + interval);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Halve the interval after a failed round, so that the next replays are
+	 * cheaper.
+	 * </p>
+	 */
+	public void onFailure() {
+		growing = false;
+		resize(interval / 2);
+	}
+
+	/**
+	 * @param aSize
+	 *            the new interval, bounded by the configuration.
+	 */
+	private void resize(int aSize) {
+		interval = Math.min(maxSize, Math.max(minSize, aSize));
+	}
+}
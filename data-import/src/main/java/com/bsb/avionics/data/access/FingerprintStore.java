@@ -0,0 +1,309 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * Fingerprints of the products of a data source imported by the previous run,
+ * kept in a local file, so that only the new and changed products of a
+ * re-imported data source are written. A product has two 64-bit fingerprints,
+ * computed on its normalized columns (see {@link NormalizedProduct}): the
+ * fingerprint of its key (PN and manufacturer) and the fingerprint of its row
+ * (all its columns). A product whose row fingerprint is stored is unchanged;
+ * otherwise it is changed if its key fingerprint is stored, new if not.
+ * </p>
+ * <p>
+ * The file holds {@link #MAGIC}, {@link #VERSION}, then the number of key
+ * fingerprints (an <code>int</code>) and the sorted key fingerprints, then
+ * the number of row fingerprints and the sorted row fingerprints.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class FingerprintStore {
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(FingerprintStore.class);
+
+	/**
+	 * <p>
+	 * The first bytes of a fingerprint file.
+	 * </p>
+	 */
+	private static final int MAGIC = 0x42534246;
+
+	/**
+	 * <p>
+	 * The version of the file format.
+	 * </p>
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * @param aHash
+	 *            the hash of the previous values.
+	 * @param aValue
+	 *            the next value, may be <code>null</code>.
+	 * @return the hash of the values (FNV-1a of their characters, each value
+	 *         being terminated so that <code>null</code>, empty and
+	 *         concatenated values differ).
+	 */
+	private static long hash(long aHash, String aValue) {
+		long hash = aHash;
+		if (aValue != null) {
+			for (int i = 0; i < aValue.length(); i++) {
+				hash ^= aValue.charAt(i);
+				hash *= 0x100000001B3L;
+			}
+		}
+		hash ^= aValue == null ? 0x10000 : 0x10001;
+		return hash * 0x100000001B3L;
+	}
+
+	/**
+	 * @param aProduct
+	 *            a normalized product.
+	 * @return the fingerprint of its key.
+	 */
+	private static long keyFingerprint(NormalizedProduct aProduct) {
+		long hash = hash(0xCBF29CE484222325L, aProduct.getTruncatedPN());
+		return mix(hash(hash, aProduct.getTruncatedManufacturer()));
+	}
+
+	/**
+	 * <p>
+	 * Load the fingerprints saved in the given file. The store is empty if the
+	 * file is missing or unreadable: all the products are new.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the fingerprint file.
+	 * @return the store.
+	 */
+	public static FingerprintStore load(Path aFile) {
+		FingerprintStore store = new FingerprintStore(aFile);
+		if (!Files.exists(aFile)) {
+			return store;
+		}
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(aFile), 1 << 16))) {
+			if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) {
+				throw new IOException("Not a fingerprint file: " + aFile);
+			}
+			store.keys = readFingerprints(input);
+			store.rows = readFingerprints(input);
+		} catch (IOException ioe) {
+			LOGGER.warn("Unreadable fingerprint file " + aFile + ". All the products are imported.", ioe);
+			store.keys = new long[0];
+			store.rows = new long[0];
+		}
+		return store;
+	}
+
+	/**
+	 * @param aHash
+	 *            a hash.
+	 * @return the hash with its bits mixed (MurmurHash3 finalizer).
+	 */
+	private static long mix(long aHash) {
+		long hash = aHash;
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * @param anInput
+	 *            the input of the file.
+	 * @return the next fingerprints of the file.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	private static long[] readFingerprints(DataInputStream anInput) throws IOException {
+		long[] fingerprints = new long[anInput.readInt()];
+		for (int i = 0; i < fingerprints.length; i++) {
+			fingerprints[i] = anInput.readLong();
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * @param aProduct
+	 *            a normalized product.
+	 * @return the fingerprint of its row.
+	 */
+	private static long rowFingerprint(NormalizedProduct aProduct) {
+		long hash = hash(0xCBF29CE484222325L, aProduct.getTruncatedPN());
+		hash = hash(hash, aProduct.getTruncatedDescription());
+		hash = hash(hash, aProduct.getTruncatedManufacturer());
+		hash = hash(hash, aProduct.getUnitOfMeasure());
+		hash = hash(hash, aProduct.getNote());
+		return mix(hash(hash, aProduct.getTruncatedAlternatePN()));
+	}
+
+	/**
+	 * @param someFingerprints
+	 *            some fingerprints.
+	 * @return the fingerprints sorted, without duplicates.
+	 */
+	private static long[] sortDistinct(long[] someFingerprints) {
+		long[] sorted = someFingerprints.clone();
+		Arrays.parallelSort(sorted);
+		int distinctCount = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i == 0 || sorted[i] != sorted[distinctCount - 1]) {
+				sorted[distinctCount++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, distinctCount);
+	}
+
+	/**
+	 * @param anOutput
+	 *            the output of the file.
+	 * @param someFingerprints
+	 *            the fingerprints to write.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	private static void writeFingerprints(DataOutputStream anOutput, long[] someFingerprints) throws IOException {
+		anOutput.writeInt(someFingerprints.length);
+		for (long fingerprint : someFingerprints) {
+			anOutput.writeLong(fingerprint);
+		}
+	}
+
+	/**
+	 * <p>
+	 * The key fingerprints of the products of the current run, to save.
+	 * </p>
+	 */
+	private long[] currentKeys = new long[0];
+
+	/**
+	 * <p>
+	 * The row fingerprints of the products of the current run, to save.
+	 * </p>
+	 */
+	private long[] currentRows = new long[0];
+
+	/**
+	 * <p>
+	 * The file the fingerprints are saved to.
+	 * </p>
+	 */
+	private Path file;
+
+	/**
+	 * <p>
+	 * The key fingerprints of the previous run, sorted.
+	 * </p>
+	 */
+	private long[] keys = new long[0];
+
+	/**
+	 * <p>
+	 * The row fingerprints of the previous run, sorted.
+	 * </p>
+	 */
+	private long[] rows = new long[0];
+
+	/**
+	 * <p>
+	 * Default constructor: an empty store.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the file the fingerprints are saved to.
+	 */
+	private FingerprintStore(Path aFile) {
+		file = aFile;
+	}
+
+	/**
+	 * <p>
+	 * Keep the new and changed products, and record the fingerprints of all the
+	 * products, to be saved once they are imported.
+	 * </p>
+	 * 
+	 * @param someProducts
+	 *            the products of the data source.
+	 * @return the new and changed products, in their order.
+	 */
+	public List<Product> filter(List<Product> someProducts) {
+		long t0 = System.currentTimeMillis();
+		currentKeys = new long[someProducts.size()];
+		currentRows = new long[someProducts.size()];
+		List<Product> changedProducts = new ArrayList<>();
+		int newCount = 0;
+		for (int i = 0; i < someProducts.size(); i++) {
+			NormalizedProduct product = NormalizedProduct.of(someProducts.get(i));
+			currentKeys[i] = keyFingerprint(product);
+			currentRows[i] = rowFingerprint(product);
+			if (Arrays.binarySearch(rows, currentRows[i]) < 0) {
+				changedProducts.add(product);
+				if (Arrays.binarySearch(keys, currentKeys[i]) < 0) {
+					newCount++;
+				}
+			}
+		}
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("Fingerprints compared in " + (System.currentTimeMillis() - t0) + " ms: " + newCount
+					+ " new products, " + (changedProducts.size() - newCount) + " changed, "
+					+ (someProducts.size() - changedProducts.size()) + " unchanged (skipped).");
+		}
+		return changedProducts;
+	}
+
+	/**
+	 * <p>
+	 * Save the fingerprints of the products of the current run (through a
+	 * temporary file, replacing the previous ones at once).
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public void save() throws IOException {
+		long[] sortedKeys = sortDistinct(currentKeys);
+		long[] sortedRows = sortDistinct(currentRows);
+		Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(),
+				".tmp");
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16))) {
+			output.writeInt(MAGIC);
+			output.writeByte(VERSION);
+			writeFingerprints(output, sortedKeys);
+			writeFingerprints(output, sortedRows);
+		}
+		Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		keys = sortedKeys;
+		rows = sortedRows;
+	}
+}
@@ -0,0 +1,322 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * Product holding the values of its DB columns, computed once: the PN, the
+ * alternate PN and the description truncated to the length of their column
+ * (see {@link ProductDAO#getTruncatedOrValue(String, int)}) and upper-cased,
+ * and the truncated manufacturer code. Two normalized products are equal when
+ * they would be written with the same column values.
+ * </p>
+ * <p>
+ * The normalized products are a snapshot of the product they were built from:
+ * their setters throw an {@link UnsupportedOperationException}, the computed
+ * column values could not follow a change.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class NormalizedProduct extends Product {
+
+	/**
+	 * <p>
+	 * Normalize the products in parallel (fork-join pool), the products that
+	 * are identical once normalized being merged.
+	 * </p>
+	 * 
+	 * @param someProducts
+	 *            the products to normalize.
+	 * @return the normalized products, in the order of their first occurrence.
+	 */
+	public static List<Product> normalizeAll(List<Product> someProducts) {
+		return someProducts.parallelStream().map(NormalizedProduct::of).distinct().collect(Collectors.toList());
+	}
+
+	/**
+	 * @param aProduct
+	 *            a product.
+	 * @return the product if already normalized, its normalized copy otherwise.
+	 */
+	public static NormalizedProduct of(Product aProduct) {
+		if (aProduct instanceof NormalizedProduct) {
+			return (NormalizedProduct) aProduct;
+		}
+		return new NormalizedProduct(aProduct);
+	}
+
+	/**
+	 * @param aValue
+	 *            a value, may be <code>null</code>.
+	 * @param aMaxLength
+	 *            the length of its column.
+	 * @return the value truncated for its column, <code>null</code> if none.
+	 */
+	private static String truncate(String aValue, int aMaxLength) {
+		return aValue == null ? null : ProductDAO.getTruncatedOrValue(aValue, aMaxLength);
+	}
+
+	/**
+	 * @param aValue
+	 *            a value, may be <code>null</code>.
+	 * @return the upper-cased value, <code>null</code> if none.
+	 */
+	private static String upper(String aValue) {
+		return aValue == null ? null : aValue.toUpperCase();
+	}
+
+	/**
+	 * <p>
+	 * The hash of the column values.
+	 * </p>
+	 */
+	private final int hash;
+
+	/**
+	 * <p>
+	 * The truncated alternate PN, <code>null</code> if none.
+	 * </p>
+	 */
+	private final String truncatedAlternatePN;
+
+	/**
+	 * <p>
+	 * The truncated description.
+	 * </p>
+	 */
+	private final String truncatedDescription;
+
+	/**
+	 * <p>
+	 * The truncated manufacturer code.
+	 * </p>
+	 */
+	private final String truncatedManufacturer;
+
+	/**
+	 * <p>
+	 * The truncated PN.
+	 * </p>
+	 */
+	private final String truncatedPN;
+
+	/**
+	 * <p>
+	 * The upper-cased truncated alternate PN, <code>null</code> if none.
+	 * </p>
+	 */
+	private final String upperAlternatePN;
+
+	/**
+	 * <p>
+	 * The upper-cased truncated description.
+	 * </p>
+	 */
+	private final String upperDescription;
+
+	/**
+	 * <p>
+	 * The upper-cased truncated PN.
+	 * </p>
+	 */
+	private final String upperPN;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aProduct
+	 *            the product to normalize.
+	 */
+	private NormalizedProduct(Product aProduct) {
+		super.setPartNumber(aProduct.getPartNumber());
+		super.setDescription(aProduct.getDescription());
+		super.setManufacturer(aProduct.getManufacturer());
+		super.setUnitOfMeasure(aProduct.getUnitOfMeasure());
+		super.setNote(aProduct.getNote());
+		super.setAlternatePartNumber(aProduct.getAlternatePartNumber());
+		truncatedPN = truncate(aProduct.getPartNumber(), PARTS_PN_LENGTH);
+		upperPN = upper(truncatedPN);
+		truncatedDescription = truncate(aProduct.getDescription(), PARTS_DESCRITPION_LENGTH);
+		upperDescription = upper(truncatedDescription);
+		truncatedManufacturer = truncate(aProduct.getManufacturer(), MFG_CODE_LENGTH);
+		truncatedAlternatePN = truncate(aProduct.getAlternatePartNumber(), PARTS_PN_LENGTH);
+		upperAlternatePN = upper(truncatedAlternatePN);
+		hash = Objects.hash(truncatedPN, truncatedDescription, truncatedManufacturer, getUnitOfMeasure(), getNote(),
+				truncatedAlternatePN);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The column values are compared.
+	 * </p>
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (obj == null || obj.getClass() != getClass()) {
+			return false;
+		}
+		NormalizedProduct rhs = (NormalizedProduct) obj;
+		return hash == rhs.hash && Objects.equals(truncatedPN, rhs.truncatedPN)
+				&& Objects.equals(truncatedDescription, rhs.truncatedDescription)
+				&& Objects.equals(truncatedManufacturer, rhs.truncatedManufacturer)
+				&& Objects.equals(getUnitOfMeasure(), rhs.getUnitOfMeasure())
+				&& Objects.equals(getNote(), rhs.getNote())
+				&& Objects.equals(truncatedAlternatePN, rhs.truncatedAlternatePN);
+	}
+
+	/**
+	 * @return the truncated alternate PN, <code>null</code> if none.
+	 */
+	public String getTruncatedAlternatePN() {
+		return truncatedAlternatePN;
+	}
+
+	/**
+	 * @return the truncated description.
+	 */
+	public String getTruncatedDescription() {
+		return truncatedDescription;
+	}
+
+	/**
+	 * @return the truncated manufacturer code.
+	 */
+	public String getTruncatedManufacturer() {
+		return truncatedManufacturer;
+	}
+
+	/**
+	 * @return the truncated PN.
+	 */
+	public String getTruncatedPN() {
+		return truncatedPN;
+	}
+
+	/**
+	 * @return the upper-cased truncated alternate PN, <code>null</code> if none.
+	 */
+	public String getUpperAlternatePN() {
+		return upperAlternatePN;
+	}
+
+	/**
+	 * @return the upper-cased truncated description.
+	 */
+	public String getUpperDescription() {
+		return upperDescription;
+	}
+
+	/**
+	 * @return the upper-cased truncated PN.
+	 */
+	public String getUpperPN() {
+		return upperPN;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Not supported: a normalized product cannot be modified.
+	 * </p>
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always.
+	 */
+	@Override
+	public void setAlternatePartNumber(String aAlternatePartNumber) {
+		throw new UnsupportedOperationException("A normalized product cannot be modified.");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Not supported: a normalized product cannot be modified.
+	 * </p>
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always.
+	 */
+	@Override
+	public void setDescription(String aDescription) {
+		throw new UnsupportedOperationException("A normalized product cannot be modified.");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Not supported: a normalized product cannot be modified.
+	 * </p>
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always.
+	 */
+	@Override
+	public void setManufacturer(String aManufacturer) {
+		throw new UnsupportedOperationException("A normalized product cannot be modified.");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Not supported: a normalized product cannot be modified.
+	 * </p>
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always.
+	 */
+	@Override
+	public void setNote(String aNote) {
+		throw new UnsupportedOperationException("A normalized product cannot be modified.");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Not supported: a normalized product cannot be modified.
+	 * </p>
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always.
+	 */
+	@Override
+	public void setPartNumber(String aPartNumber) {
+		throw new UnsupportedOperationException("A normalized product cannot be modified.");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Not supported: a normalized product cannot be modified.
+	 * </p>
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always.
+	 */
+	@Override
+	public void setUnitOfMeasure(String aUnitOfMeasure) {
+		throw new UnsupportedOperationException("A normalized product cannot be modified.");
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * Write a product list with several connections in parallel. The products are
+ * split in partitions by a hash of their truncated PN, each partition being
+ * handled by its own {@link ProductDAO} (i.e. its own connection).
+ * </p>
+ * <p>
+ * A product and its alternate PN always land in the same partition (the PNs
+ * linked by an alternate are grouped first), so that a part is never looked up
+ * or inserted by two workers. The missing manufacturers and UOMs are created
+ * and committed before the workers start, so that the workers never insert the
+ * same new code twice; if they cannot be created, the list is handled by a
+ * single worker.
+ * </p>
+ * <p>
+ * The part number filter is opened once, by the DAO creating the codes, and
+ * saved by it before the workers start; the workers only read it. The parts
+ * inserted by the workers are above its watermark, so they are read by its
+ * next refresh.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class ParallelProductWriter {
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(ParallelProductWriter.class);
+
+	/**
+	 * <p>
+	 * Find the representative of a PN in the alternate groups, compressing the
+	 * path on the way.
+	 * </p>
+	 * 
+	 * @param someGroups
+	 *            the parent of each PN.
+	 * @param aPartNumber
+	 *            the PN to look for.
+	 * @return the representative PN of the group.
+	 */
+	private static String findGroup(Map<String, String> someGroups, String aPartNumber) {
+		String root = aPartNumber;
+		String parent = someGroups.get(root);
+		while (parent != null && !parent.equals(root)) {
+			root = parent;
+			parent = someGroups.get(root);
+		}
+		String current = aPartNumber;
+		while (!current.equals(root)) {
+			String next = someGroups.get(current);
+			someGroups.put(current, root);
+			current = next;
+		}
+		return root;
+	}
+
+	/**
+	 * @param aProduct
+	 *            a normalized product.
+	 * @return the key of its PN in the alternate groups: the truncated PN, the
+	 *         empty string if none.
+	 */
+	private static String groupKey(NormalizedProduct aProduct) {
+		return aProduct.getTruncatedPN() == null ? "" : aProduct.getTruncatedPN();
+	}
+
+	/**
+	 * <p>
+	 * The number of workers (i.e. of partitions and connections).
+	 * </p>
+	 */
+	private int workerCount;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aWorkerCount
+	 *            the number of workers (i.e. of partitions and connections).
+	 */
+	public ParallelProductWriter(int aWorkerCount) {
+		workerCount = Math.max(1, aWorkerCount);
+	}
+
+	/**
+	 * <p>
+	 * Split the products by a hash of their truncated PN. The PNs linked by an
+	 * alternate PN are grouped so that they share a partition. The order of the
+	 * products is kept within a partition.
+	 * </p>
+	 * 
+	 * @param aProductList
+	 *            the products to split.
+	 * @return the partitions.
+	 */
+	List<List<Product>> partition(List<Product> aProductList) {
+		Map<String, String> groups = new HashMap<>();
+		for (Product product : aProductList) {
+			NormalizedProduct normalized = NormalizedProduct.of(product);
+			String pnGroup = findGroup(groups, groupKey(normalized));
+			groups.putIfAbsent(pnGroup, pnGroup);
+			if (normalized.getTruncatedAlternatePN() != null) {
+				String altGroup = findGroup(groups, normalized.getTruncatedAlternatePN());
+				if (!altGroup.equals(pnGroup)) {
+					groups.put(altGroup, pnGroup);
+				}
+			}
+		}
+		List<List<Product>> partitions = new ArrayList<>(workerCount);
+		for (int i = 0; i < workerCount; i++) {
+			partitions.add(new ArrayList<>(aProductList.size() / workerCount + 1));
+		}
+		for (Product product : aProductList) {
+			String group = findGroup(groups, groupKey(NormalizedProduct.of(product)));
+			partitions.get(Math.floorMod(group.hashCode(), workerCount)).add(product);
+		}
+		return partitions;
+	}
+
+	/**
+	 * <b>Handle the given {@link Product} list with the workers.</b>
+	 * 
+	 * @param aProductList
+	 *            the product list to use.
+	 * @return the number of products skipped, the whole partition of a worker
+	 *         that failed or did not commit all its products being counted.
+	 */
+	public int write(List<Product> aProductList) {
+		boolean areCodesPrepared = false;
+		ProductDAO codesDAO = new ProductDAO();
+		PartNumberFilter partNumberFilter = codesDAO.getPartNumberFilter();
+		try {
+			codesDAO.prepareCodes(aProductList);
+			areCodesPrepared = true;
+		} catch (SQLException sqle) {
+			// The workers would race to insert the same new codes.
+			LOGGER.error("Error while creating the manufacturers and UOMs. The products are handled by a single worker.",
+					sqle);
+		} finally {
+			try {
+				codesDAO.dispose();
+			} catch (SQLException sqle) {
+				LOGGER.error("Error while closing the connection.", sqle);
+			}
+		}
+
+		List<List<Product>> partitions = areCodesPrepared ? partition(aProductList)
+				: Collections.singletonList(aProductList);
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		int skippedCount = 0;
+		try {
+			List<Future<Integer>> results = new ArrayList<>(workerCount);
+			for (List<Product> partition : partitions) {
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("Submitting a partition of " + partition.size() + " products.");
+				}
+				results.add(executor.submit(() -> {
+					ProductDAO dao = new ProductDAO(partNumberFilter);
+					try {
+						dao.handleProductList(partition);
+						// A partition not fully committed is imported again.
+						return dao.isFullyCommitted() ? dao.getSkippedCount() : partition.size();
+					} finally {
+						try {
+							dao.dispose();
+						} catch (SQLException sqle) {
+							LOGGER.error("Error while closing the connection.", sqle);
+						}
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					skippedCount += results.get(i).get();
+				} catch (ExecutionException ee) {
+					LOGGER.error("A worker failed while handling its partition.", ee.getCause());
+					skippedCount += partitions.get(i).size();
+				}
+			}
+		} catch (InterruptedException ie) {
+			LOGGER.error("Interrupted while waiting for the workers.", ie);
+			Thread.currentThread().interrupt();
+			skippedCount = aProductList.size();
+		} finally {
+			executor.shutdownNow();
+		}
+		return skippedCount;
+	}
+}
@@ -0,0 +1,416 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import oracle.jdbc.OraclePreparedStatement;
+import oracle.jdbc.OracleResultSet;
+
+/**
+ * <p>
+ * Bloom filter of the part numbers stored in PARTS_MASTER, kept in a local
+ * file between the runs. A part number the filter does not contain is
+ * definitely not stored, so it needs no lookup; a part number it contains is
+ * stored or a false positive, at the configured rate.
+ * </p>
+ * <p>
+ * The filter is built from the DB the first time (or when the false positive
+ * rate changes or the filter is full), then refreshed at each run with the
+ * rows whose PNM_AUTO_KEY is above the highest key read so far (the
+ * <i>watermark</i>). The part numbers inserted during the run are added as
+ * they are inserted (they are read again by the next refresh). The filter
+ * also keeps the number of rows read up to the watermark: if the DB no longer
+ * has as many rows up to the watermark (rows committed late with a lower key,
+ * deleted rows), the filter is rebuilt. This count only reads the primary
+ * key index; the part numbers updated in place are not detected, so the
+ * filter is also rebuilt once older than the configured maximum age.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class PartNumberFilter {
+
+	/**
+	 * <p>
+	 * The number of part numbers the filter is sized for, at least.
+	 * </p>
+	 */
+	private static final long CAPACITY_MIN = 100_000L;
+
+	/**
+	 * <p>
+	 * The fetch size to use while reading PARTS_MASTER.
+	 * </p>
+	 */
+	private static final int FETCH_SIZE = 10_000;
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(PartNumberFilter.class);
+
+	/**
+	 * <p>
+	 * The first bytes of a filter file.
+	 * </p>
+	 */
+	private static final int MAGIC = 0x4253424C;
+
+	/**
+	 * <p>
+	 * Query to count the Products up to a key.
+	 * </p>
+	 */
+	private static final String PN_CHECK = "SELECT COUNT(*) FROM PARTS_MASTER WHERE PNM_AUTO_KEY <= ?";
+
+	/**
+	 * <p>
+	 * Query to count the Products.
+	 * </p>
+	 */
+	private static final String PN_COUNT = "SELECT COUNT(*) FROM PARTS_MASTER";
+
+	/**
+	 * <p>
+	 * Query to read the part numbers of the Products above a key.
+	 * </p>
+	 */
+	private static final String PN_SCAN = "SELECT PN, PNM_AUTO_KEY FROM PARTS_MASTER WHERE PNM_AUTO_KEY > ?";
+
+	/**
+	 * <p>
+	 * The version of the file format.
+	 * </p>
+	 */
+	private static final int VERSION = 3;
+
+	/**
+	 * @param aTruncatedPN
+	 *            a truncated part number.
+	 * @return a 64-bit hash of the part number (FNV-1a of its characters,
+	 *         mixed with the MurmurHash3 finalizer).
+	 */
+	private static long hash(String aTruncatedPN) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < aTruncatedPN.length(); i++) {
+			hash ^= aTruncatedPN.charAt(i);
+			hash *= 0x100000001B3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * <p>
+	 * Open the filter saved in the given file and refresh it from the DB, or
+	 * build it from the DB if the file is missing, unreadable, full, sized for
+	 * another false positive rate, too old or out of date (see
+	 * {@link #isUpToDate(Connection)}).
+	 * </p>
+	 * 
+	 * @param aConnection
+	 *            the connection to use.
+	 * @param aFile
+	 *            the filter file.
+	 * @param aFalsePositiveRate
+	 *            the false positive rate to size the filter for.
+	 * @param aMaxAge
+	 *            the number of days after which the filter is rebuilt, 0 not
+	 *            to rebuild it by age.
+	 * @return the filter.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	public static PartNumberFilter open(Connection aConnection, Path aFile, double aFalsePositiveRate, int aMaxAge)
+			throws SQLException {
+		long t0 = System.currentTimeMillis();
+		PartNumberFilter filter = null;
+		if (Files.exists(aFile)) {
+			try {
+				filter = read(aFile);
+			} catch (IOException ioe) {
+				LOGGER.warn("Unreadable part number filter " + aFile + ". It is rebuilt.", ioe);
+			}
+		}
+		if (filter != null && (filter.falsePositiveRate != aFalsePositiveRate || filter.count > filter.capacity)) {
+			LOGGER.info("The part number filter is full or sized for another false positive rate. It is rebuilt.");
+			filter = null;
+		}
+		if (filter != null && aMaxAge > 0
+				&& System.currentTimeMillis() - filter.buildTime > TimeUnit.DAYS.toMillis(aMaxAge)) {
+			LOGGER.info("The part number filter is older than " + aMaxAge + " days. It is rebuilt.");
+			filter = null;
+		}
+		if (filter != null && !filter.isUpToDate(aConnection)) {
+			LOGGER.info("PARTS_MASTER changed below the watermark of the part number filter. It is rebuilt.");
+			filter = null;
+		}
+		if (filter == null) {
+			long rowCount;
+			try (OraclePreparedStatement statement = (OraclePreparedStatement) aConnection
+					.prepareStatement(PN_COUNT);
+					OracleResultSet result = (OracleResultSet) statement.executeQuery();) {
+				rowCount = result.next() ? result.getLong(1) : 0;
+			}
+			filter = new PartNumberFilter(Math.max(CAPACITY_MIN, 2 * rowCount), aFalsePositiveRate);
+			filter.buildTime = System.currentTimeMillis();
+		}
+		long previousCount = filter.count;
+		filter.refresh(aConnection);
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("Part number filter ready in " + (System.currentTimeMillis() - t0) + " ms: "
+					+ (filter.count - previousCount) + " part numbers read from PARTS_MASTER, " + filter.count
+					+ " in total.");
+		}
+		filter.file = aFile;
+		return filter;
+	}
+
+	/**
+	 * @param aFile
+	 *            the filter file.
+	 * @return the filter saved in the file.
+	 * @throws IOException
+	 *             if the file cannot be read or is not a filter file.
+	 */
+	private static PartNumberFilter read(Path aFile) throws IOException {
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(aFile), 1 << 16))) {
+			if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) {
+				throw new IOException("Not a part number filter file: " + aFile);
+			}
+			PartNumberFilter filter = new PartNumberFilter(input.readLong(), input.readDouble());
+			filter.count = input.readLong();
+			filter.watermark = input.readLong();
+			filter.rowCount = input.readLong();
+			filter.buildTime = input.readLong();
+			for (int i = 0; i < filter.bits.length; i++) {
+				filter.bits[i] = input.readLong();
+			}
+			return filter;
+		}
+	}
+
+	/**
+	 * <p>
+	 * The number of bits of the filter.
+	 * </p>
+	 */
+	private long bitCount;
+
+	/**
+	 * <p>
+	 * The bits of the filter.
+	 * </p>
+	 */
+	private long[] bits;
+
+	/**
+	 * <p>
+	 * When the filter was built from the DB (epoch milliseconds).
+	 * </p>
+	 */
+	private long buildTime;
+
+	/**
+	 * <p>
+	 * The number of part numbers the filter is sized for.
+	 * </p>
+	 */
+	private long capacity;
+
+	/**
+	 * <p>
+	 * The number of part numbers added (duplicates included).
+	 * </p>
+	 */
+	private long count;
+
+	/**
+	 * <p>
+	 * The false positive rate the filter is sized for.
+	 * </p>
+	 */
+	private double falsePositiveRate;
+
+	/**
+	 * <p>
+	 * The file the filter is saved to.
+	 * </p>
+	 */
+	private Path file;
+
+	/**
+	 * <p>
+	 * The number of bits set per part number.
+	 * </p>
+	 */
+	private int hashCount;
+
+	/**
+	 * <p>
+	 * The number of rows read from the DB (all up to the watermark).
+	 * </p>
+	 */
+	private long rowCount;
+
+	/**
+	 * <p>
+	 * The highest PNM_AUTO_KEY read from the DB.
+	 * </p>
+	 */
+	private long watermark;
+
+	/**
+	 * <p>
+	 * Default constructor: an empty filter.
+	 * </p>
+	 * 
+	 * @param aCapacity
+	 *            the number of part numbers to size the filter for.
+	 * @param aFalsePositiveRate
+	 *            the false positive rate once the filter holds its capacity.
+	 */
+	private PartNumberFilter(long aCapacity, double aFalsePositiveRate) {
+		capacity = aCapacity;
+		falsePositiveRate = aFalsePositiveRate;
+		// m = -n ln(p) / ln(2)^2 bits, k = m / n ln(2) hash functions.
+		long words = (long) Math.ceil(-aCapacity * Math.log(aFalsePositiveRate) / (Math.log(2) * Math.log(2)) / 64);
+		bits = new long[(int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, words))];
+		bitCount = 64L * bits.length;
+		hashCount = (int) Math.max(1, Math.round((double) bitCount / aCapacity * Math.log(2)));
+	}
+
+	/**
+	 * <p>
+	 * Add a part number.
+	 * </p>
+	 * 
+	 * @param aTruncatedPN
+	 *            the truncated part number.
+	 */
+	public void add(String aTruncatedPN) {
+		long hash = hash(aTruncatedPN);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = ((hash1 + (long) i * hash2) & Long.MAX_VALUE) % bitCount;
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+		count++;
+	}
+
+	/**
+	 * @param aConnection
+	 *            the connection to use.
+	 * @return <code>true</code> if the DB has as many rows up to the watermark
+	 *         as the rows read.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private boolean isUpToDate(Connection aConnection) throws SQLException {
+		try (OraclePreparedStatement statement = (OraclePreparedStatement) aConnection.prepareStatement(PN_CHECK);) {
+			statement.setLong(1, watermark);
+			try (OracleResultSet result = (OracleResultSet) statement.executeQuery();) {
+				return result.next() && result.getLong(1) == rowCount;
+			}
+		}
+	}
+
+	/**
+	 * @param aTruncatedPN
+	 *            the truncated part number.
+	 * @return <code>false</code> if the part number is definitely not stored,
+	 *         <code>true</code> if it may be.
+	 */
+	public boolean mightContain(String aTruncatedPN) {
+		long hash = hash(aTruncatedPN);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = ((hash1 + (long) i * hash2) & Long.MAX_VALUE) % bitCount;
+			if ((bits[(int) (bit >>> 6)] & 1L << bit) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Add the part numbers of the rows above the watermark.
+	 * </p>
+	 * 
+	 * @param aConnection
+	 *            the connection to use.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private void refresh(Connection aConnection) throws SQLException {
+		try (OraclePreparedStatement statement = (OraclePreparedStatement) aConnection.prepareStatement(PN_SCAN);) {
+			statement.setLong(1, watermark);
+			statement.setFetchSize(FETCH_SIZE);
+			try (OracleResultSet result = (OracleResultSet) statement.executeQuery();) {
+				while (result.next()) {
+					String pn = result.getString(1);
+					if (pn != null) {
+						add(pn);
+					}
+					watermark = Math.max(watermark, result.getLong(2));
+					rowCount++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Save the filter to its file (through a temporary file, replacing it at
+	 * once).
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public void save() throws IOException {
+		Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(),
+				".tmp");
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16))) {
+			output.writeInt(MAGIC);
+			output.writeByte(VERSION);
+			output.writeLong(capacity);
+			output.writeDouble(falsePositiveRate);
+			output.writeLong(count);
+			output.writeLong(watermark);
+			output.writeLong(rowCount);
+			output.writeLong(buildTime);
+			for (long word : bits) {
+				output.writeLong(word);
+			}
+		}
+		Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.bsb.avionics.data.access.dto.ProductAndMfgDTO;
+
+/**
+ * <p>
+ * Per-run index of the PARTS_MASTER rows by truncated PN. A PN is
+ * <i>known</i> once its rows were fetched from the DB; the parts inserted
+ * during the run are added to it so that later duplicates resolve without
+ * querying again. The parts added since the last commit are tracked so that
+ * they can be forgotten if the transaction is rolled back.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class PartNumberIndex {
+
+	/**
+	 * <p>
+	 * The parts (and their manufacturer) by truncated PN.
+	 * </p>
+	 */
+	private Map<String, List<ProductAndMfgDTO>> productsByPN;
+
+	/**
+	 * <p>
+	 * The parts added in the current transaction, with their PN.
+	 * </p>
+	 */
+	private List<Entry<String, ProductAndMfgDTO>> uncommittedProducts;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 */
+	public PartNumberIndex() {
+		productsByPN = new HashMap<>();
+		uncommittedProducts = new ArrayList<>();
+	}
+
+	/**
+	 * <p>
+	 * Register a part inserted in the current transaction.
+	 * </p>
+	 * 
+	 * @param aTruncatedPN
+	 *            the truncated part number.
+	 * @param aProduct
+	 *            the part and manufacturer identifiers.
+	 */
+	public void addInserted(String aTruncatedPN, ProductAndMfgDTO aProduct) {
+		getOrCreate(aTruncatedPN).add(aProduct);
+		uncommittedProducts.add(new SimpleImmutableEntry<>(aTruncatedPN, aProduct));
+	}
+
+	/**
+	 * <p>
+	 * Register a part fetched from the DB.
+	 * </p>
+	 * 
+	 * @param aTruncatedPN
+	 *            the truncated part number.
+	 * @param aProduct
+	 *            the part and manufacturer identifiers.
+	 */
+	public void addLoaded(String aTruncatedPN, ProductAndMfgDTO aProduct) {
+		getOrCreate(aTruncatedPN).add(aProduct);
+	}
+
+	/**
+	 * <p>
+	 * The current transaction was committed: the added parts are now permanent.
+	 * </p>
+	 */
+	public void commit() {
+		uncommittedProducts.clear();
+	}
+
+	/**
+	 * @param aTruncatedPN
+	 *            the truncated part number to look for.
+	 * @return the parts stored for this PN (possibly empty) or <code>null</code>
+	 *         if the PN is not known yet.
+	 */
+	public List<ProductAndMfgDTO> get(String aTruncatedPN) {
+		List<ProductAndMfgDTO> products = productsByPN.get(aTruncatedPN);
+		return products == null ? null : Collections.unmodifiableList(products);
+	}
+
+	/**
+	 * @param aTruncatedPN
+	 *            the truncated part number.
+	 * @return the (modifiable) list of the parts stored for this PN, created if
+	 *         the PN was not known.
+	 */
+	private List<ProductAndMfgDTO> getOrCreate(String aTruncatedPN) {
+		List<ProductAndMfgDTO> products = productsByPN.get(aTruncatedPN);
+		if (products == null) {
+			products = new ArrayList<>(1);
+			productsByPN.put(aTruncatedPN, products);
+		}
+		return products;
+	}
+
+	/**
+	 * @param aTruncatedPN
+	 *            the truncated part number.
+	 * @return <code>true</code> if the rows of this PN were already fetched.
+	 */
+	public boolean isKnown(String aTruncatedPN) {
+		return productsByPN.containsKey(aTruncatedPN);
+	}
+
+	/**
+	 * <p>
+	 * Mark a PN as fetched from the DB, even if no row was found for it.
+	 * </p>
+	 * 
+	 * @param aTruncatedPN
+	 *            the truncated part number.
+	 */
+	public void markKnown(String aTruncatedPN) {
+		getOrCreate(aTruncatedPN);
+	}
+
+	/**
+	 * <p>
+	 * The current transaction was rolled back: forget the parts added in it.
+	 * </p>
+	 */
+	public void rollback() {
+		rollback(0);
+	}
+
+	/**
+	 * <p>
+	 * The current transaction was rolled back to a savepoint: forget the parts
+	 * added since.
+	 * </p>
+	 * 
+	 * @param aSavepoint
+	 *            the value returned by {@link #savepoint()} when the savepoint
+	 *            was set.
+	 */
+	public void rollback(int aSavepoint) {
+		List<Entry<String, ProductAndMfgDTO>> rolledBackProducts = uncommittedProducts.subList(aSavepoint,
+				uncommittedProducts.size());
+		for (Entry<String, ProductAndMfgDTO> product : rolledBackProducts) {
+			productsByPN.get(product.getKey()).remove(product.getValue());
+		}
+		rolledBackProducts.clear();
+	}
+
+	/**
+	 * @return a mark of the parts added so far in the current transaction, to
+	 *         pass to {@link #rollback(int)}.
+	 */
+	public int savepoint() {
+		return uncommittedProducts.size();
+	}
+
+	/**
+	 * @return the number of known PNs.
+	 */
+	public int size() {
+		return productsByPN.size();
+	}
+}
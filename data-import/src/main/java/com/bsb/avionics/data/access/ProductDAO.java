@@ -1,464 +1,1353 @@
-/**
- * 
- */
-package com.bsb.avionics.data.access;
-
-import java.io.StringReader;
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.util.List;
-import java.util.Map;
-
-import org.apache.commons.collections4.map.HashedMap;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-import com.bsb.avionics.data.access.dto.ProductAndMfgDTO;
-import com.bsb.avionics.model.Product;
-import com.bsb.avionics.utils.ConnectionProperties;
-
-import oracle.jdbc.OraclePreparedStatement;
-import oracle.jdbc.OracleResultSet;
-import oracle.jdbc.OracleTypes;
-import oracle.jdbc.pool.OracleDataSource;
-import oracle.sql.NUMBER;
-
-/**
- * @author Marc PEZZETTI
- *
- */
-public class ProductDAO {
-
-	/**
-	 * <p>
-	 * Query to use to insert an ALTERNATE product.
-	 * </p>
-	 */
-	private static final String ALT_PRODUCT_INSERT = "INSERT INTO ALTERNATES_PARTS_MASTER (APM_AUTO_KEY, PNM_AUTO_KEY, ALT_PNM_AUTO_KEY) "
-			+ "VALUES (G_APM_AUTO_KEY.NEXTVAL, ?, ?)";
-
-	/**
-	 * <p>
-	 * The logger to use for this class.
-	 * </p>
-	 */
-	private static final Logger LOGGER = LogManager.getLogger(ProductDAO.class);
-
-	/**
-	 * <p>
-	 * Query to use to insert and retrieve the Manufacturer identifier.
-	 * </p>
-	 */
-	private static final String MFG_INSERT = "INSERT INTO MANUFACTURER (MFG_AUTO_KEY, DESCRIPTION, MFG_CODE) VALUES (G_MFG_AUTO_KEY.NEXTVAL, ' ', ?) RETURNING MFG_AUTO_KEY INTO ?";
-
-	/**
-	 * <p>
-	 * Query to search for a specific Manufacturer.
-	 * </p>
-	 */
-	private static final String MFG_SEARCH = "SELECT MFG_AUTO_KEY FROM MANUFACTURER WHERE MFG_CODE = ?";
-
-	/**
-	 * <p>
-	 * Query to search for a specific Product.
-	 * </p>
-	 */
-	private static final String PN_SEARCH = "SELECT PNM_AUTO_KEY, MFG_AUTO_KEY FROM PARTS_MASTER WHERE PN = ?";
-
-	/**
-	 * <p>
-	 * Query to use to insert a PRODUCT.
-	 * </p>
-	 */
-	private static final String PRODUCT_INSERT = "INSERT INTO PARTS_MASTER (PNM_AUTO_KEY, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES) "
-			+ "VALUES (G_PNM_AUTO_KEY.NEXTVAL, ?, ?, ?, ?, ?, ?, ?) RETURNING PNM_AUTO_KEY INTO ?";
-
-	/**
-	 * <p>
-	 * Query to use to insert a PRODUCT for an alternate PRODUCT.
-	 * </p>
-	 */
-	private static final String PRODUCT_INSERT_FOR_ALT = "INSERT INTO PARTS_MASTER (PNM_AUTO_KEY, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES, REMARKS, SERIALIZED) "
-			+ "VALUES (G_PNM_AUTO_KEY.NEXTVAL, ?, ?, ?, ?, ?, ?, ?, 'OCDIA', 'F') RETURNING PNM_AUTO_KEY INTO ?";
-
-	/**
-	 * <p>
-	 * Query to use to insert and retrieve the UOM identifier.
-	 * </p>
-	 */
-	private static final String UOM_INSERT = "INSERT INTO UOM_CODES (UOM_AUTO_KEY, UOM_CODE) VALUES (G_UOM_AUTO_KEY.NEXTVAL, ?) RETURNING UOM_AUTO_KEY INTO ?";
-
-	/**
-	 * <p>
-	 * Query to search for a specific UOM.
-	 * </p>
-	 */
-	private static final String UOM_SEARCH = "SELECT UOM_AUTO_KEY FROM UOM_CODES WHERE UOM_CODE = ?";
-
-	/**
-	 * <p>
-	 * The connection to use to query the database.
-	 * </p>
-	 */
-	private Connection connection;
-
-	/**
-	 * <p>
-	 * Default constructor establishing the DB connection.
-	 * </p>
-	 */
-	public ProductDAO() {
-		ConnectionProperties properties = ConnectionProperties.getInstance();
-		try {
-			Class.forName("oracle.jdbc.driver.OracleDriver");
-			OracleDataSource ods = new OracleDataSource();
-			ods.setTNSEntryName(properties.getSID());
-			ods.setUser(properties.getUser());
-			ods.setPassword(properties.getPassword());
-			ods.setDriverType(properties.getDriverType());
-			connection = ods.getConnection();
-			connection.setAutoCommit(false);
-		} catch (SQLException | ClassNotFoundException e) {
-			LOGGER.fatal("An exception occurred while establishing the connection.", e);
-		}
-	}
-
-	/**
-	 * @throws SQLException
-	 *             if an error occurs while shutting down the connection.
-	 * 
-	 */
-	public void dispose() throws SQLException {
-		connection.close();
-	}
-
-	/**
-	 * <p>
-	 * Check whether the PartNumber - Manufacturer combination exists in DB.
-	 * </p>
-	 * 
-	 * @param aPartNumber
-	 *            the part number (truncated) to check.
-	 * @param aManufacturerId
-	 *            the manufacturer identifier to use.
-	 * @return <code>true</code> if the combination exists, <code>false</code>
-	 *         otherwise.
-	 * @throws SQLException
-	 *             if an error occurs while querying the DB.
-	 */
-	private boolean existsProductAndManufacturer(String aPartNumber, NUMBER aManufacturerId) throws SQLException {
-		boolean exists = false;
-		try (OraclePreparedStatement productStatement = (OraclePreparedStatement) connection
-				.prepareStatement(PN_SEARCH);) {
-			productStatement.setString(1, getTruncatedOrValue(aPartNumber, Product.PARTS_PN_LENGTH));
-			OracleResultSet result = (OracleResultSet) productStatement.executeQuery();
-			if (result.next()) {
-				do {
-					NUMBER mfgId = result.getNUMBER(2);
-					exists = mfgId.longValue() == aManufacturerId.longValue();
-				} while (result.next() && !exists);
-			}
-		}
-		return exists;
-	}
-
-	/**
-	 * <p>
-	 * Retrieve the manufacturer identifier. If none can be found, it will be
-	 * inserted in DB.
-	 * </p>
-	 * 
-	 * @param aManufacturer
-	 *            the Manufacturer code to use to query the DB.
-	 * @return the manufacturer identifier.
-	 * @throws SQLException
-	 *             if an error occurs while querying the DB.
-	 */
-	private NUMBER getManufacturerOrInsert(final String aManufacturer) throws SQLException {
-		NUMBER manufacturerId;
-		String truncatedManufacturerCode = getTruncatedOrValue(aManufacturer, Product.MFG_CODE_LENGTH);
-		try (OraclePreparedStatement manufacturerStatement = (OraclePreparedStatement) connection
-				.prepareStatement(MFG_SEARCH);) {
-			manufacturerStatement.setString(1, truncatedManufacturerCode);
-			OracleResultSet result = (OracleResultSet) manufacturerStatement.executeQuery();
-			if (result.next()) {
-				manufacturerId = result.getNUMBER(1);
-			} else {
-				try (OraclePreparedStatement manufacturerInsert = (OraclePreparedStatement) connection
-						.prepareStatement(MFG_INSERT);) {
-					manufacturerInsert.setString(1, truncatedManufacturerCode);
-					manufacturerInsert.registerReturnParameter(2, OracleTypes.NUMBER);
-					manufacturerInsert.execute();
-					OracleResultSet manufacturerResult = (OracleResultSet) manufacturerInsert.getReturnResultSet();
-					manufacturerResult.next();
-					manufacturerId = manufacturerResult.getNUMBER(1);
-					if (LOGGER.isDebugEnabled()) {
-						LOGGER.debug("Manufacturer inserted: " + aManufacturer + " (truncated to "
-								+ truncatedManufacturerCode + "). New id: " + manufacturerId.intValue());
-					}
-				}
-			}
-		}
-		return manufacturerId;
-	}
-
-	/**
-	 * <p>
-	 * Get the value of the provided string of its truncated value if the length is
-	 * greater or equals than the second argument.
-	 * </p>
-	 * 
-	 * @param aValue
-	 *            the value to use.
-	 * @param aMaxLength
-	 *            the maximum length of the string.
-	 * @return the provided string or its truncated version.
-	 */
-	private String getTruncatedOrValue(String aValue, final int aMaxLength) {
-		String truncatedValue = aValue;
-		if (truncatedValue.length() >= aMaxLength) {
-			truncatedValue = truncatedValue.substring(0, aMaxLength - 1);
-		}
-		return truncatedValue;
-	}
-
-	/**
-	 * <p>
-	 * Retrieve the UOM identifier. If none can be found, it will be inserted in DB.
-	 * </p>
-	 * 
-	 * @param aUOM
-	 *            the Unit Of Measure to use.
-	 * @return the UOM identifier.
-	 * @throws SQLException
-	 *             if an error occurs while querying the DB.
-	 */
-	private NUMBER getUOMOrInsert(final String aUOM) throws SQLException {
-		NUMBER uomId;
-		try (OraclePreparedStatement uomStatement = (OraclePreparedStatement) connection
-				.prepareStatement(UOM_SEARCH);) {
-			uomStatement.setString(1, aUOM);
-			OracleResultSet result = (OracleResultSet) uomStatement.executeQuery();
-			if (result.next()) {
-				uomId = result.getNUMBER(1);
-			} else {
-				try (OraclePreparedStatement uomQuery = (OraclePreparedStatement) connection
-						.prepareStatement(UOM_INSERT)) {
-					uomQuery.setString(1, aUOM);
-					uomQuery.registerReturnParameter(2, OracleTypes.NUMERIC);
-					uomQuery.execute();
-					OracleResultSet uomResult = (OracleResultSet) uomQuery.getReturnResultSet();
-					uomResult.next();
-					uomId = uomResult.getNUMBER(1);
-					if (LOGGER.isDebugEnabled()) {
-						LOGGER.debug("UOM inserted: " + aUOM + ". New Id: " + uomId.intValue());
-					}
-				}
-			}
-		}
-		return uomId;
-	}
-
-	/**
-	 * <p>
-	 * Handle a product, i.e. check if it exists and then: <br/>
-	 * - either insert it. <br/>
-	 * - or insert an alternate product.
-	 * </p>
-	 * 
-	 * @param aProduct
-	 *            the product to handle.
-	 * @throws SQLException
-	 *             if an exception occurs.
-	 */
-	private void handleProduct(Product aProduct) throws SQLException {
-		NUMBER mfgId = getManufacturerOrInsert(aProduct.getManufacturer());
-		// SELECT pn?
-		try (OraclePreparedStatement productStatement = (OraclePreparedStatement) connection
-				.prepareStatement(PN_SEARCH);) {
-			productStatement.setString(1, getTruncatedOrValue(aProduct.getPartNumber(), Product.PARTS_PN_LENGTH));
-			OracleResultSet result = (OracleResultSet) productStatement.executeQuery();
-			if (result.next()) {
-				// IF FOUND: insert an alternate to it !
-				// Same Manufacturer ?
-				Map<Long, ProductAndMfgDTO> resultMap = new HashedMap<>(result.getFetchSize());
-				do {
-					ProductAndMfgDTO currentDTO = new ProductAndMfgDTO(result.getNUMBER(1), result.getNUMBER(2));
-					resultMap.put(currentDTO.getManufacturerKey().longValue(), currentDTO);
-				} while (result.next());
-				ProductAndMfgDTO foundDTO = resultMap.get(mfgId.longValue());
-				if (foundDTO == null) {
-					foundDTO = resultMap.values().iterator().next();
-					insertAlternateProduct(aProduct, foundDTO.getProductKey(), mfgId);
-				} else {
-					// log nothing to do.
-					if (LOGGER.isInfoEnabled()) {
-						LOGGER.info("Current Product not insert with no alternate. Product already found in database.");
-						LOGGER.info("Found Product: " + aProduct.getPartNumber() + "; manufacturer: "
-								+ aProduct.getManufacturer());
-					}
-				}
-			} else {
-				// IF not found: INSERT !
-				insertProduct(aProduct, mfgId);
-			}
-		}
-	}
-
-	/**
-	 * <b>Handle the given {@link Product} list.</b>
-	 * 
-	 * @param aProductList
-	 *            the product list to use.
-	 */
-	public void handleProductList(List<Product> aProductList) {
-		int batchCount = 0;
-		for (Product currentProduct : aProductList) {
-			try {
-				handleProduct(currentProduct);
-				batchCount++;
-				if (batchCount % 10 == 0) {
-					connection.commit();
-				}
-			} catch (SQLException sqle) {
-				LOGGER.error("Error while handling the product list.", sqle);
-			}
-		}
-	}
-
-	/**
-	 * <p>
-	 * When a duplicate is found, an alternate product is created.
-	 * </p>
-	 * 
-	 * @param aProduct
-	 *            the product to use for the alternate description.
-	 * @param aPartNumberId
-	 *            the part number identifier corresponding to the alternate to
-	 *            create.
-	 * @param aMFGIdentifier
-	 *            the Manufacturer identifier (either created or retrieved from
-	 *            Database).
-	 * @throws SQLException
-	 *             if an error occurs while querying the DB.
-	 */
-	private void insertAlternateProduct(Product aProduct, NUMBER aPartNumberId, NUMBER aMFGIdentifier)
-			throws SQLException {
-		insertAlternateProduct(aProduct, aPartNumberId, aMFGIdentifier, false);
-	}
-
-	/**
-	 * <p>
-	 * When a duplicate is found, an alternate product is created.
-	 * </p>
-	 * 
-	 * @param aProduct
-	 *            the product to use for the alternate description.
-	 * @param aPartNumberId
-	 *            the part number identifier corresponding to the alternate to
-	 *            create.
-	 * @param aMFGIdentifier
-	 *            the Manufacturer identifier (either created or retrieved from
-	 *            Database).
-	 * @param isForAlternate
-	 *            flag indicating if this method is called to insert an alternate
-	 *            for the PN (when <code>false</code>) or for the Alternate PN (when
-	 *            <code>true</code>).
-	 * @throws SQLException
-	 *             if an error occurs while querying the DB.
-	 */
-	private void insertAlternateProduct(Product aProduct, NUMBER aPartNumberId, NUMBER aMFGIdentifier,
-			boolean isForAlternate) throws SQLException {
-		NUMBER uomId = getUOMOrInsert(aProduct.getUnitOfMeasure());
-
-		String partNumber = isForAlternate ? aProduct.getAlternatePartNumber() : aProduct.getPartNumber();
-		String truncatedPN = getTruncatedOrValue(partNumber, Product.PARTS_PN_LENGTH);
-
-		if (LOGGER.isDebugEnabled()) {
-			LOGGER.debug("Trying to insert alternate product for PN: " + partNumber + " (truncated to " + truncatedPN
-					+ "). Existing one: " + aPartNumberId.longValue());
-		}
-		// Insert an alternate part
-		NUMBER altProductId = null;
-		if (!existsProductAndManufacturer(truncatedPN, aMFGIdentifier)) {
-			try (OraclePreparedStatement altProductStatement = (OraclePreparedStatement) connection
-					.prepareStatement(PRODUCT_INSERT_FOR_ALT);) {
-				altProductStatement.setString(1, truncatedPN);
-				altProductStatement.setString(2, truncatedPN.toUpperCase());
-				String truncatedDescription = getTruncatedOrValue(aProduct.getDescription(),
-						Product.PARTS_DESCRITPION_LENGTH);
-				altProductStatement.setString(3, truncatedDescription);
-				altProductStatement.setString(4, truncatedDescription.toUpperCase());
-				altProductStatement.setNUMBER(5, aMFGIdentifier);
-				altProductStatement.setNUMBER(6, uomId);
-				altProductStatement.setClob(7, new StringReader(aProduct.getNote()));
-				altProductStatement.registerReturnParameter(8, OracleTypes.NUMBER);
-				altProductStatement.execute();
-				OracleResultSet altResultSet = (OracleResultSet) altProductStatement.getReturnResultSet();
-				altResultSet.next();
-				altProductId = altResultSet.getNUMBER(1);
-			}
-
-			if (LOGGER.isDebugEnabled()) {
-				LOGGER.debug("Inserting in alternate parts master. PartNumber " + aPartNumberId.longValue()
-						+ "; Alternate PartNumber: " + altProductId.longValue());
-			}
-			try (OraclePreparedStatement productStatement = (OraclePreparedStatement) connection
-					.prepareStatement(ALT_PRODUCT_INSERT);) {
-				productStatement.setNUMBER(1, aPartNumberId);
-				productStatement.setNUMBER(2, altProductId);
-				productStatement.executeUpdate();
-			}
-			if (!isForAlternate && altProductId != null) {
-				insertAlternateProduct(aProduct, altProductId, aMFGIdentifier, true);
-			}
-		} else {
-			if (LOGGER.isDebugEnabled()) {
-				LOGGER.debug("Alternate product creation is skipped because the combination part number (" + truncatedPN
-						+ ") and manufacturer (" + aProduct.getManufacturer() + ") already exists in database.");
-			}
-		}
-	}
-
-	/**
-	 * <p>
-	 * Insert a new product in database. Check whether the manufacturer & unit of
-	 * measure are to be created.
-	 * </p>
-	 * 
-	 * @param aProduct
-	 *            the product to insert.
-	 * @param aMFGIdentifier
-	 *            the Manufacturer identifier (either created or retrieved from
-	 *            Database).
-	 * @throws SQLException
-	 *             if an error occurs while querying the DB.
-	 */
-	private void insertProduct(Product aProduct, NUMBER aMFGIdentifier) throws SQLException {
-		NUMBER uomId = getUOMOrInsert(aProduct.getUnitOfMeasure());
-
-		NUMBER partNumberId = null;
-		try (OraclePreparedStatement productStatement = (OraclePreparedStatement) connection
-				.prepareStatement(PRODUCT_INSERT);) {
-			String truncatedPN = getTruncatedOrValue(aProduct.getPartNumber(), Product.PARTS_PN_LENGTH);
-			productStatement.setString(1, truncatedPN);
-			productStatement.setString(2, truncatedPN.toUpperCase());
-			String truncatedDescription = getTruncatedOrValue(aProduct.getDescription(),
-					Product.PARTS_DESCRITPION_LENGTH);
-			productStatement.setString(3, truncatedDescription);
-			productStatement.setString(4, truncatedDescription.toUpperCase());
-			productStatement.setNUMBER(5, aMFGIdentifier);
-			productStatement.setNUMBER(6, uomId);
-			productStatement.setClob(7, new StringReader(aProduct.getNote()));
-			productStatement.registerReturnParameter(8, OracleTypes.NUMBER);
-			productStatement.execute();
-			OracleResultSet productResultSet = (OracleResultSet) productStatement.getReturnResultSet();
-			productResultSet.next();
-			partNumberId = productResultSet.getNUMBER(1);
-
-		}
-		if (partNumberId != null && aProduct.getAlternatePartNumber() != null) {
-			insertAlternateProduct(aProduct, partNumberId, aMFGIdentifier, true);
-		}
-	}
-}
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.data.access.dto.ProductAndMfgDTO;
+import com.bsb.avionics.model.Product;
+import com.bsb.avionics.utils.ConnectionProperties;
+
+import oracle.jdbc.OraclePreparedStatement;
+import oracle.jdbc.OracleResultSet;
+import oracle.jdbc.pool.OracleDataSource;
+import oracle.sql.NUMBER;
+
+/**
+ * @author Marc PEZZETTI
+ *
+ */
+public class ProductDAO {
+
+	/**
+	 * <p>
+	 * Query to use to insert an ALTERNATE product.
+	 * </p>
+	 */
+	private static final String ALT_PRODUCT_INSERT = "INSERT INTO ALTERNATES_PARTS_MASTER (APM_AUTO_KEY, PNM_AUTO_KEY, ALT_PNM_AUTO_KEY) "
+			+ "VALUES (?, ?, ?)";
+
+	/**
+	 * <p>
+	 * The batched inserts, in the order they must be sent to the DB (the parts
+	 * reference the manufacturers and UOMs, the alternate links reference the
+	 * parts of the round).
+	 * </p>
+	 */
+	private static final String[] BATCHED_INSERTS = { ProductDAO.MFG_INSERT, ProductDAO.UOM_INSERT,
+			ProductDAO.PRODUCT_INSERT, ProductDAO.PRODUCT_INSERT_FOR_ALT, ProductDAO.ALT_PRODUCT_INSERT };
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(ProductDAO.class);
+
+	/**
+	 * <p>
+	 * Query to use to insert a Manufacturer.
+	 * </p>
+	 */
+	private static final String MFG_INSERT = "INSERT INTO MANUFACTURER (MFG_AUTO_KEY, DESCRIPTION, MFG_CODE) VALUES (?, ' ', ?)";
+
+	/**
+	 * <p>
+	 * Query to load all the Manufacturers.
+	 * </p>
+	 */
+	private static final String MFG_LOAD = "SELECT MFG_CODE, MFG_AUTO_KEY FROM MANUFACTURER";
+
+	/**
+	 * <p>
+	 * Query to search for a specific Manufacturer.
+	 * </p>
+	 */
+	private static final String MFG_SEARCH = "SELECT MFG_AUTO_KEY FROM MANUFACTURER WHERE MFG_CODE = ?";
+
+	/**
+	 * <p>
+	 * Query to search for a specific Product.
+	 * </p>
+	 */
+	private static final String PN_SEARCH = "SELECT PNM_AUTO_KEY, MFG_AUTO_KEY FROM PARTS_MASTER WHERE PN = ?";
+
+	/**
+	 * <p>
+	 * Query to stream all the Products (in no particular order).
+	 * </p>
+	 */
+	private static final String PN_SNAPSHOT = "SELECT PN, PNM_AUTO_KEY, MFG_AUTO_KEY FROM PARTS_MASTER "
+			+ "WHERE PN IS NOT NULL";
+
+	/**
+	 * <p>
+	 * Query to use to insert a PRODUCT.
+	 * </p>
+	 */
+	private static final String PRODUCT_INSERT = "INSERT INTO PARTS_MASTER (PNM_AUTO_KEY, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * <p>
+	 * Query to use to insert a PRODUCT for an alternate PRODUCT.
+	 * </p>
+	 */
+	private static final String PRODUCT_INSERT_FOR_ALT = "INSERT INTO PARTS_MASTER (PNM_AUTO_KEY, PN, PN_UPPER, DESCRIPTION, DESCRIPTION_UPPER, MFG_AUTO_KEY, UOM_AUTO_KEY, NOTES, REMARKS, SERIALIZED) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 'OCDIA', 'F')";
+
+	/**
+	 * <p>
+	 * Query to use to insert a UOM.
+	 * </p>
+	 */
+	private static final String UOM_INSERT = "INSERT INTO UOM_CODES (UOM_AUTO_KEY, UOM_CODE) VALUES (?, ?)";
+
+	/**
+	 * <p>
+	 * Query to load all the UOMs.
+	 * </p>
+	 */
+	private static final String UOM_LOAD = "SELECT UOM_CODE, UOM_AUTO_KEY FROM UOM_CODES";
+
+	/**
+	 * <p>
+	 * Query to search for a specific UOM.
+	 * </p>
+	 */
+	private static final String UOM_SEARCH = "SELECT UOM_AUTO_KEY FROM UOM_CODES WHERE UOM_CODE = ?";
+
+	/**
+	 * <p>
+	 * Build the query searching for a chunk of part numbers.
+	 * </p>
+	 * 
+	 * @param aChunkSize
+	 *            the number of part numbers per query.
+	 * @return the query.
+	 */
+	private static String buildPartNumberLookup(int aChunkSize) {
+		StringBuilder query = new StringBuilder("SELECT PN, PNM_AUTO_KEY, MFG_AUTO_KEY FROM PARTS_MASTER WHERE PN IN (");
+		for (int i = 0; i < aChunkSize; i++) {
+			query.append(i == 0 ? "?" : ", ?");
+		}
+		return query.append(")").toString();
+	}
+
+	/**
+	 * <p>
+	 * Get the value of the provided string of its truncated value if the length is
+	 * greater or equals than the second argument.
+	 * </p>
+	 * 
+	 * @param aValue
+	 *            the value to use.
+	 * @param aMaxLength
+	 *            the maximum length of the string.
+	 * @return the provided string or its truncated version.
+	 */
+	public static String getTruncatedOrValue(String aValue, final int aMaxLength) {
+		String truncatedValue = aValue;
+		if (truncatedValue.length() >= aMaxLength) {
+			truncatedValue = truncatedValue.substring(0, aMaxLength - 1);
+		}
+		return truncatedValue;
+	}
+
+	/**
+	 * <p>
+	 * Open a connection to the Quantum DB described by the connection properties.
+	 * The auto-commit mode is disabled.
+	 * </p>
+	 * 
+	 * @return the connection.
+	 * @throws SQLException
+	 *             if the connection cannot be established.
+	 * @throws ClassNotFoundException
+	 *             if the Oracle driver cannot be found.
+	 */
+	public static Connection openConnection() throws SQLException, ClassNotFoundException {
+		ConnectionProperties properties = ConnectionProperties.getInstance();
+		Class.forName("oracle.jdbc.driver.OracleDriver");
+		OracleDataSource ods = new OracleDataSource();
+		ods.setTNSEntryName(properties.getSID());
+		ods.setUser(properties.getUser());
+		ods.setPassword(properties.getPassword());
+		ods.setDriverType(properties.getDriverType());
+		Connection connection = ods.getConnection();
+		connection.setAutoCommit(false);
+		return connection;
+	}
+
+	/**
+	 * <p>
+	 * The ALTERNATES_PARTS_MASTER identifiers.
+	 * </p>
+	 */
+	private SequenceKeyAllocator alternateKeys;
+
+	/**
+	 * <p>
+	 * The alternate links written during the run (for the chain lengths
+	 * report).
+	 * </p>
+	 */
+	private AlternatesGraph alternateLinks;
+
+	/**
+	 * <p>
+	 * The adaptive number of products to handle before the current batch is
+	 * executed and committed.
+	 * </p>
+	 */
+	private CommitIntervalController commitInterval;
+
+	/**
+	 * <p>
+	 * The offset, in the imported list, of the first product not committed.
+	 * </p>
+	 */
+	private int committedOffset;
+
+	/**
+	 * <p>
+	 * The connection to use to query the database.
+	 * </p>
+	 */
+	private Connection connection;
+
+	/**
+	 * <p>
+	 * The number of part numbers not looked up because the filter does not
+	 * contain them.
+	 * </p>
+	 */
+	private int filteredCount;
+
+	/**
+	 * <p>
+	 * The number of products handled so far.
+	 * </p>
+	 */
+	private int handledCount;
+
+	/**
+	 * <p>
+	 * Whether the part number filter is shared with other DAOs: it is then only
+	 * read, neither updated nor saved by this DAO.
+	 * </p>
+	 */
+	private boolean isFilterShared;
+
+	/**
+	 * <p>
+	 * The journal of the progress of the import, <code>null</code> if none.
+	 * </p>
+	 */
+	private ProgressJournal journal;
+
+	/**
+	 * <p>
+	 * The offset, in the imported list, of the next product to handle.
+	 * </p>
+	 */
+	private int listOffset;
+
+	/**
+	 * <p>
+	 * The number of part numbers to look up per query.
+	 * </p>
+	 */
+	private int lookupSize;
+
+	/**
+	 * <p>
+	 * The MANUFACTURER identifiers.
+	 * </p>
+	 */
+	private SequenceKeyAllocator manufacturerKeys;
+
+	/**
+	 * <p>
+	 * The Manufacturer identifiers by (truncated) MFG_CODE.
+	 * </p>
+	 */
+	private CodeCache manufacturers;
+
+	/**
+	 * <p>
+	 * The filter of the part numbers stored in PARTS_MASTER, <code>null</code>
+	 * if disabled.
+	 * </p>
+	 */
+	private PartNumberFilter partNumberFilter;
+
+	/**
+	 * <p>
+	 * Query to search for a chunk of part numbers (built for the lookup size).
+	 * </p>
+	 */
+	private String partNumberLookup;
+
+	/**
+	 * <p>
+	 * The PARTS_MASTER rows fetched or inserted during this run, by truncated
+	 * PN.
+	 * </p>
+	 */
+	private PartNumberIndex partNumbers;
+
+	/**
+	 * <p>
+	 * The products handled since the last commit (the current round).
+	 * </p>
+	 */
+	private List<NormalizedProduct> pendingProducts;
+
+	/**
+	 * <p>
+	 * The PARTS_MASTER identifiers.
+	 * </p>
+	 */
+	private SequenceKeyAllocator productKeys;
+
+	/**
+	 * <p>
+	 * The offset, in the imported list, of the first product not committed by
+	 * the resumed run.
+	 * </p>
+	 */
+	private int resumeOffset;
+
+	/**
+	 * <p>
+	 * The start of the current round, in nanoseconds.
+	 * </p>
+	 */
+	private long roundStart;
+
+	/**
+	 * <p>
+	 * The number of products skipped because they failed.
+	 * </p>
+	 */
+	private int skippedCount;
+
+	/**
+	 * <p>
+	 * The statements prepared on the connection, kept for the life of the DAO.
+	 * </p>
+	 */
+	private StatementCache statements;
+
+	/**
+	 * <p>
+	 * The UOM identifiers by UOM_CODE.
+	 * </p>
+	 */
+	private CodeCache unitsOfMeasure;
+
+	/**
+	 * <p>
+	 * The UOM_CODES identifiers.
+	 * </p>
+	 */
+	private SequenceKeyAllocator uomKeys;
+
+	/**
+	 * <p>
+	 * Default constructor establishing the DB connection.
+	 * </p>
+	 */
+	public ProductDAO() {
+		this(null, false);
+	}
+
+	/**
+	 * <p>
+	 * Constructor establishing the DB connection and reading the given part
+	 * number filter, opened once for several DAOs.
+	 * </p>
+	 * 
+	 * @param aSharedFilter
+	 *            the part number filter, <code>null</code> if disabled.
+	 */
+	ProductDAO(PartNumberFilter aSharedFilter) {
+		this(aSharedFilter, true);
+	}
+
+	/**
+	 * <p>
+	 * Constructor establishing the DB connection.
+	 * </p>
+	 * 
+	 * @param aSharedFilter
+	 *            the part number filter shared with other DAOs.
+	 * @param isShared
+	 *            <code>true</code> to use the shared filter, <code>false</code>
+	 *            to open the configured filter.
+	 */
+	private ProductDAO(PartNumberFilter aSharedFilter, boolean isShared) {
+		ConnectionProperties properties = ConnectionProperties.getInstance();
+		commitInterval = new CommitIntervalController(properties.getBatchSize(), properties.getCommitMinSize(),
+				properties.getCommitMaxSize(), properties.getCommitMaxLatency());
+		pendingProducts = new ArrayList<>();
+		alternateLinks = new AlternatesGraph();
+		// Oracle limits an IN-list to 1000 expressions.
+		lookupSize = Math.min(1000, Math.max(1, properties.getLookupSize()));
+		partNumberLookup = buildPartNumberLookup(lookupSize);
+		partNumbers = new PartNumberIndex();
+		manufacturers = new CodeCache();
+		unitsOfMeasure = new CodeCache();
+		partNumberFilter = aSharedFilter;
+		isFilterShared = isShared;
+		try {
+			connection = openConnection();
+			statements = new StatementCache(connection);
+			int keyBlockSize = properties.getSequenceBlockSize();
+			productKeys = new SequenceKeyAllocator(statements, "G_PNM_AUTO_KEY", keyBlockSize);
+			alternateKeys = new SequenceKeyAllocator(statements, "G_APM_AUTO_KEY", keyBlockSize);
+			manufacturerKeys = new SequenceKeyAllocator(statements, "G_MFG_AUTO_KEY", keyBlockSize);
+			uomKeys = new SequenceKeyAllocator(statements, "G_UOM_AUTO_KEY", keyBlockSize);
+			manufacturers.load(connection, MFG_LOAD);
+			unitsOfMeasure.load(connection, UOM_LOAD);
+			String filterFile = properties.getPartNumberFilterFile();
+			if (!isShared && !filterFile.isEmpty()) {
+				try {
+					partNumberFilter = PartNumberFilter.open(connection, Paths.get(filterFile),
+							properties.getPartNumberFilterFalsePositiveRate(),
+							properties.getPartNumberFilterMaxAge());
+				} catch (SQLException sqle) {
+					LOGGER.warn("Error while loading the part number filter. It is disabled.", sqle);
+				}
+			}
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Loaded " + manufacturers.size() + " manufacturers and " + unitsOfMeasure.size()
+						+ " UOMs.");
+			}
+		} catch (SQLException | ClassNotFoundException e) {
+			LOGGER.fatal("An exception occurred while establishing the connection.", e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Register a part inserted in the current transaction, in the index and in
+	 * the filter.
+	 * </p>
+	 * 
+	 * @param aTruncatedPN
+	 *            the truncated part number.
+	 * @param aProduct
+	 *            the part and manufacturer identifiers.
+	 */
+	private void addInserted(String aTruncatedPN, ProductAndMfgDTO aProduct) {
+		partNumbers.addInserted(aTruncatedPN, aProduct);
+		if (partNumberFilter != null && !isFilterShared && aTruncatedPN != null) {
+			partNumberFilter.add(aTruncatedPN);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Register the rows fetched for a part number, which becomes known.
+	 * </p>
+	 * 
+	 * @param aTruncatedPN
+	 *            the truncated part number.
+	 * @param someRows
+	 *            its rows (possibly none).
+	 */
+	private void addLoaded(String aTruncatedPN, List<ProductAndMfgDTO> someRows) {
+		partNumbers.markKnown(aTruncatedPN);
+		for (ProductAndMfgDTO row : someRows) {
+			partNumbers.addLoaded(aTruncatedPN, row);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Discard the inserts of the current round not sent to the DB yet.
+	 * </p>
+	 * 
+	 * @throws SQLException
+	 *             if an error occurs while clearing the statements.
+	 */
+	private void clearBatches() throws SQLException {
+		for (String batchSql : BATCHED_INSERTS) {
+			statements.clearBatch(batchSql);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Execute the pending batches and commit them. If the batches fail, the
+	 * whole round is rolled back.
+	 * </p>
+	 * 
+	 * @throws SQLException
+	 *             if an error occurs while executing the batches.
+	 */
+	private void commitBatch() throws SQLException {
+		try {
+			flushBatch();
+			connection.commit();
+			manufacturers.commit();
+			unitsOfMeasure.commit();
+			partNumbers.commit();
+			alternateLinks.commit();
+		} catch (SQLException sqle) {
+			rollbackRound();
+			throw sqle;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Execute the pending batches and commit them, then adapt the commit interval
+	 * to the measured latency and throughput. If the batches fail, the round is
+	 * replayed product by product.
+	 * </p>
+	 */
+	private void commitRound() {
+		long commitStart = System.nanoTime();
+		try {
+			commitBatch();
+		} catch (SQLException sqle) {
+			LOGGER.warn("Error while committing " + pendingProducts.size()
+					+ " products. Replaying them one by one.", sqle);
+			replayRound();
+			return;
+		}
+		long commitEnd = System.nanoTime();
+		handledCount += pendingProducts.size();
+		commitInterval.onCommit(pendingProducts.size(), commitEnd - roundStart, commitEnd - commitStart);
+		pendingProducts.clear();
+		recordCommit();
+	}
+
+	/**
+	 * <p>
+	 * Commit the products handled since the last batch, then report the length
+	 * of the alternate chains and log the statement executions.
+	 * </p>
+	 */
+	public void completeProductList() {
+		if (!pendingProducts.isEmpty()) {
+			commitRound();
+		}
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("Alternate links: " + alternateLinks.size() + ". Chains by length: "
+					+ alternateLinks.getChainLengths());
+			LOGGER.info("Products handled: " + handledCount + ", skipped: " + skippedCount
+					+ ". Part numbers not looked up (not in the filter): " + filteredCount
+					+ ". Statement executions:" + System.lineSeparator() + statements);
+		}
+	}
+
+	/**
+	 * @throws SQLException
+	 *             if an error occurs while shutting down the connection.
+	 * 
+	 */
+	public void dispose() throws SQLException {
+		if (partNumberFilter != null && !isFilterShared) {
+			try {
+				partNumberFilter.save();
+			} catch (IOException ioe) {
+				LOGGER.error("Error while saving the part number filter.", ioe);
+			}
+		}
+		try {
+			statements.close();
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Drop the journal that cannot be written: the import goes on without it.
+	 * </p>
+	 * 
+	 * @param anException
+	 *            the write failure.
+	 */
+	private void dropJournal(IOException anException) {
+		LOGGER.error("Error while writing the progress journal. The import can no longer be resumed.", anException);
+		try {
+			journal.close();
+		} catch (IOException ioe) {
+			LOGGER.error("Error while closing the progress journal.", ioe);
+		}
+		journal = null;
+	}
+
+	/**
+	 * <p>
+	 * Check whether the PartNumber - Manufacturer combination exists in DB.
+	 * </p>
+	 * 
+	 * @param aPartNumber
+	 *            the part number (truncated) to check.
+	 * @param aManufacturerId
+	 *            the manufacturer identifier to use.
+	 * @return <code>true</code> if the combination exists, <code>false</code>
+	 *         otherwise.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private boolean existsProductAndManufacturer(String aPartNumber, NUMBER aManufacturerId) throws SQLException {
+		boolean exists = false;
+		for (ProductAndMfgDTO currentDTO : findProducts(aPartNumber)) {
+			if (currentDTO.getManufacturerKey().longValue() == aManufacturerId.longValue()) {
+				exists = true;
+				break;
+			}
+		}
+		return exists;
+	}
+
+	/**
+	 * <p>
+	 * Retrieve all the parts (and their manufacturer) stored for the given part
+	 * number, including the ones inserted during this run and not yet sent to the
+	 * DB. The PN is queried only if it was not looked up before.
+	 * </p>
+	 * 
+	 * @param aTruncatedPN
+	 *            the truncated part number to look for.
+	 * @return the found parts (possibly empty).
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private List<ProductAndMfgDTO> findProducts(String aTruncatedPN) throws SQLException {
+		if (!partNumbers.isKnown(aTruncatedPN)) {
+			lookupPartNumbers(Collections.singleton(aTruncatedPN));
+		}
+		return partNumbers.get(aTruncatedPN);
+	}
+
+	/**
+	 * <p>
+	 * Send the pending inserts to the DB: the parts first, then the alternate
+	 * links referencing them.
+	 * </p>
+	 * 
+	 * @throws SQLException
+	 *             if an error occurs while executing the batches.
+	 */
+	private void flushBatch() throws SQLException {
+		for (String batchSql : BATCHED_INSERTS) {
+			statements.executeBatch(batchSql);
+		}
+	}
+
+	/**
+	 * @return the number of executions of each statement, by SQL string.
+	 */
+	public Map<String, Long> getExecutionCounts() {
+		return statements.getExecutionCounts();
+	}
+
+	/**
+	 * @return the number of part numbers looked up per query, i.e. the advised
+	 *         chunk size for {@link #handleProductChunk(List)}.
+	 */
+	public int getLookupSize() {
+		return lookupSize;
+	}
+
+	/**
+	 * <p>
+	 * Retrieve the manufacturer identifier, from the preloaded dictionary first.
+	 * If none can be found, it will be inserted in DB (with the current batch).
+	 * </p>
+	 * 
+	 * @param aTruncatedManufacturer
+	 *            the Manufacturer code (truncated) to use to query the DB.
+	 * @return the manufacturer identifier.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private NUMBER getManufacturerOrInsert(final String aTruncatedManufacturer) throws SQLException {
+		NUMBER manufacturerId = manufacturers.get(aTruncatedManufacturer);
+		if (manufacturerId != null) {
+			return manufacturerId;
+		}
+		OraclePreparedStatement manufacturerStatement = statements.get(MFG_SEARCH);
+		manufacturerStatement.setString(1, aTruncatedManufacturer);
+		try (OracleResultSet result = statements.executeQuery(MFG_SEARCH);) {
+			manufacturerId = result.next() ? result.getNUMBER(1) : null;
+		}
+		if (manufacturerId != null) {
+			manufacturers.put(aTruncatedManufacturer, manufacturerId);
+		} else {
+			manufacturerId = manufacturerKeys.next();
+			OraclePreparedStatement manufacturerInsert = statements.get(MFG_INSERT);
+			manufacturerInsert.setNUMBER(1, manufacturerId);
+			manufacturerInsert.setString(2, aTruncatedManufacturer);
+			statements.addBatch(MFG_INSERT);
+			manufacturers.putInserted(aTruncatedManufacturer, manufacturerId);
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug(
+						"Manufacturer inserted: " + aTruncatedManufacturer + ". New id: " + manufacturerId.intValue());
+			}
+		}
+		return manufacturerId;
+	}
+
+	/**
+	 * @return the part number filter, <code>null</code> if disabled.
+	 */
+	PartNumberFilter getPartNumberFilter() {
+		return partNumberFilter;
+	}
+
+	/**
+	 * @return the number of products skipped because they failed.
+	 */
+	public int getSkippedCount() {
+		return skippedCount;
+	}
+
+	/**
+	 * <p>
+	 * Retrieve the UOM identifier, from the preloaded dictionary first. If none
+	 * can be found, it will be inserted in DB (with the current batch).
+	 * </p>
+	 * 
+	 * @param aUOM
+	 *            the Unit Of Measure to use.
+	 * @return the UOM identifier.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private NUMBER getUOMOrInsert(final String aUOM) throws SQLException {
+		NUMBER uomId = unitsOfMeasure.get(aUOM);
+		if (uomId != null) {
+			return uomId;
+		}
+		OraclePreparedStatement uomStatement = statements.get(UOM_SEARCH);
+		uomStatement.setString(1, aUOM);
+		try (OracleResultSet result = statements.executeQuery(UOM_SEARCH);) {
+			uomId = result.next() ? result.getNUMBER(1) : null;
+		}
+		if (uomId != null) {
+			unitsOfMeasure.put(aUOM, uomId);
+		} else {
+			uomId = uomKeys.next();
+			OraclePreparedStatement uomQuery = statements.get(UOM_INSERT);
+			uomQuery.setNUMBER(1, uomId);
+			uomQuery.setString(2, aUOM);
+			statements.addBatch(UOM_INSERT);
+			unitsOfMeasure.putInserted(aUOM, uomId);
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("UOM inserted: " + aUOM + ". New Id: " + uomId.intValue());
+			}
+		}
+		return uomId;
+	}
+
+	/**
+	 * <p>
+	 * Handle a product, i.e. check if it exists and then: <br/>
+	 * - either insert it. <br/>
+	 * - or insert an alternate product.
+	 * </p>
+	 * 
+	 * @param aProduct
+	 *            the product to handle.
+	 * @throws SQLException
+	 *             if an exception occurs.
+	 */
+	private void handleProduct(NormalizedProduct aProduct) throws SQLException {
+		NUMBER mfgId = getManufacturerOrInsert(aProduct.getTruncatedManufacturer());
+		// SELECT pn?
+		List<ProductAndMfgDTO> foundProducts = findProducts(aProduct.getTruncatedPN());
+		if (!foundProducts.isEmpty()) {
+			// IF FOUND: insert an alternate to it !
+			// Same Manufacturer ?
+			ProductAndMfgDTO foundDTO = null;
+			for (ProductAndMfgDTO currentDTO : foundProducts) {
+				if (currentDTO.getManufacturerKey().longValue() == mfgId.longValue()) {
+					foundDTO = currentDTO;
+					break;
+				}
+			}
+			if (foundDTO == null) {
+				foundDTO = foundProducts.get(0);
+				insertAlternateProduct(aProduct, foundDTO.getProductKey(), mfgId);
+			} else {
+				// log nothing to do.
+				if (LOGGER.isInfoEnabled()) {
+					LOGGER.info("Current Product not insert with no alternate. Product already found in database.");
+					LOGGER.info("Found Product: " + aProduct.getPartNumber() + "; manufacturer: "
+							+ aProduct.getManufacturer());
+				}
+			}
+		} else {
+			// IF not found: INSERT !
+			insertProduct(aProduct, mfgId);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Handle the next products of the list being imported: their part numbers
+	 * are looked up together, then they are handled one by one. The inserts are
+	 * committed by rounds of an adaptive number of products (starting with
+	 * <code>oracle.batch.size</code>). If a product fails, its round is rolled
+	 * back and replayed with a savepoint per product, so that only the failing
+	 * products are skipped. {@link #completeProductList()} must be called once
+	 * all the chunks were handled.
+	 * </p>
+	 * 
+	 * @param aProductChunk
+	 *            the products to handle (at most the lookup size is advised).
+	 */
+	public void handleProductChunk(List<Product> aProductChunk) {
+		// Skip the products committed by the resumed run, with no query.
+		int resumedCount = Math.max(0, Math.min(aProductChunk.size(), resumeOffset - listOffset));
+		listOffset += resumedCount;
+		List<NormalizedProduct> normalizedChunk = new ArrayList<>(aProductChunk.size() - resumedCount);
+		for (Product product : aProductChunk.subList(resumedCount, aProductChunk.size())) {
+			normalizedChunk.add(NormalizedProduct.of(product));
+		}
+		try {
+			prefetchPartNumbers(normalizedChunk);
+		} catch (SQLException sqle) {
+			LOGGER.error("Error while looking up the part numbers.", sqle);
+		}
+		for (NormalizedProduct currentProduct : normalizedChunk) {
+			if (pendingProducts.isEmpty()) {
+				roundStart = System.nanoTime();
+			}
+			pendingProducts.add(currentProduct);
+			listOffset++;
+			try {
+				handleProduct(currentProduct);
+			} catch (SQLException sqle) {
+				LOGGER.warn("Error while handling the product " + currentProduct.getPartNumber()
+						+ ". Replaying the current round one product at a time.", sqle);
+				try {
+					rollbackRound();
+				} catch (SQLException rollbackException) {
+					LOGGER.error("Error while rolling back the current round.", rollbackException);
+				}
+				replayRound();
+				continue;
+			}
+			if (pendingProducts.size() >= commitInterval.getInterval()) {
+				commitRound();
+			}
+		}
+	}
+
+	/**
+	 * <b>Handle the given {@link Product} list.</b>
+	 * <p>
+	 * The part numbers are looked up by chunks of <code>oracle.lookup.size</code>
+	 * products and the inserts are sent to the DB (and committed) by rounds of an
+	 * adaptive number of products.
+	 * </p>
+	 * 
+	 * @param aProductList
+	 *            the product list to use.
+	 */
+	public void handleProductList(List<Product> aProductList) {
+		handleProducts(aProductList);
+		completeProductList();
+	}
+
+	/**
+	 * <p>
+	 * Handle the given products by chunks of the lookup size.
+	 * </p>
+	 * 
+	 * @param aProductList
+	 *            the products to handle.
+	 */
+	private void handleProducts(List<Product> aProductList) {
+		for (int chunkStart = 0; chunkStart < aProductList.size(); chunkStart += lookupSize) {
+			handleProductChunk(
+					aProductList.subList(chunkStart, Math.min(chunkStart + lookupSize, aProductList.size())));
+		}
+	}
+
+	/**
+	 * <p>
+	 * When a duplicate is found, an alternate product is created.
+	 * </p>
+	 * 
+	 * @param aProduct
+	 *            the product to use for the alternate description.
+	 * @param aPartNumberId
+	 *            the part number identifier corresponding to the alternate to
+	 *            create.
+	 * @param aMFGIdentifier
+	 *            the Manufacturer identifier (either created or retrieved from
+	 *            Database).
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private void insertAlternateProduct(NormalizedProduct aProduct, NUMBER aPartNumberId, NUMBER aMFGIdentifier)
+			throws SQLException {
+		insertAlternateProduct(aProduct, aPartNumberId, aMFGIdentifier, false);
+	}
+
+	/**
+	 * <p>
+	 * When a duplicate is found, an alternate product is created.
+	 * </p>
+	 * 
+	 * @param aProduct
+	 *            the product to use for the alternate description.
+	 * @param aPartNumberId
+	 *            the part number identifier corresponding to the alternate to
+	 *            create.
+	 * @param aMFGIdentifier
+	 *            the Manufacturer identifier (either created or retrieved from
+	 *            Database).
+	 * @param isForAlternate
+	 *            flag indicating if this method is called to insert an alternate
+	 *            for the PN (when <code>false</code>) or for the Alternate PN (when
+	 *            <code>true</code>).
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private void insertAlternateProduct(NormalizedProduct aProduct, NUMBER aPartNumberId, NUMBER aMFGIdentifier,
+			boolean isForAlternate) throws SQLException {
+		NUMBER uomId = getUOMOrInsert(aProduct.getUnitOfMeasure());
+
+		String partNumber = isForAlternate ? aProduct.getAlternatePartNumber() : aProduct.getPartNumber();
+		String truncatedPN = isForAlternate ? aProduct.getTruncatedAlternatePN() : aProduct.getTruncatedPN();
+
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Trying to insert alternate product for PN: " + partNumber + " (truncated to " + truncatedPN
+					+ "). Existing one: " + aPartNumberId.longValue());
+		}
+		// Insert an alternate part
+		NUMBER altProductId = null;
+		if (!existsProductAndManufacturer(truncatedPN, aMFGIdentifier)) {
+			altProductId = productKeys.next();
+			OraclePreparedStatement alternateProductBatch = statements.get(PRODUCT_INSERT_FOR_ALT);
+			alternateProductBatch.setNUMBER(1, altProductId);
+			alternateProductBatch.setString(2, truncatedPN);
+			alternateProductBatch.setString(3,
+					isForAlternate ? aProduct.getUpperAlternatePN() : aProduct.getUpperPN());
+			alternateProductBatch.setString(4, aProduct.getTruncatedDescription());
+			alternateProductBatch.setString(5, aProduct.getUpperDescription());
+			alternateProductBatch.setNUMBER(6, aMFGIdentifier);
+			alternateProductBatch.setNUMBER(7, uomId);
+			alternateProductBatch.setString(8, aProduct.getNote());
+			statements.addBatch(PRODUCT_INSERT_FOR_ALT);
+			addInserted(truncatedPN, new ProductAndMfgDTO(altProductId, aMFGIdentifier));
+
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Inserting in alternate parts master. PartNumber " + aPartNumberId.longValue()
+						+ "; Alternate PartNumber: " + altProductId.longValue());
+			}
+			OraclePreparedStatement linkBatch = statements.get(ALT_PRODUCT_INSERT);
+			linkBatch.setNUMBER(1, alternateKeys.next());
+			linkBatch.setNUMBER(2, aPartNumberId);
+			linkBatch.setNUMBER(3, altProductId);
+			statements.addBatch(ALT_PRODUCT_INSERT);
+			alternateLinks.add(aPartNumberId.longValue(), altProductId.longValue());
+			if (!isForAlternate && aProduct.getAlternatePartNumber() != null) {
+				insertAlternateProduct(aProduct, altProductId, aMFGIdentifier, true);
+			}
+		} else {
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Alternate product creation is skipped because the combination part number (" + truncatedPN
+						+ ") and manufacturer (" + aProduct.getManufacturer() + ") already exists in database.");
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Insert a new product in database. Check whether the manufacturer & unit of
+	 * measure are to be created.
+	 * </p>
+	 * 
+	 * @param aProduct
+	 *            the product to insert.
+	 * @param aMFGIdentifier
+	 *            the Manufacturer identifier (either created or retrieved from
+	 *            Database).
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private void insertProduct(NormalizedProduct aProduct, NUMBER aMFGIdentifier) throws SQLException {
+		NUMBER uomId = getUOMOrInsert(aProduct.getUnitOfMeasure());
+
+		NUMBER partNumberId = productKeys.next();
+		OraclePreparedStatement productBatch = statements.get(PRODUCT_INSERT);
+		String truncatedPN = aProduct.getTruncatedPN();
+		productBatch.setNUMBER(1, partNumberId);
+		productBatch.setString(2, truncatedPN);
+		productBatch.setString(3, aProduct.getUpperPN());
+		productBatch.setString(4, aProduct.getTruncatedDescription());
+		productBatch.setString(5, aProduct.getUpperDescription());
+		productBatch.setNUMBER(6, aMFGIdentifier);
+		productBatch.setNUMBER(7, uomId);
+		productBatch.setString(8, aProduct.getNote());
+		statements.addBatch(PRODUCT_INSERT);
+		addInserted(truncatedPN, new ProductAndMfgDTO(partNumberId, aMFGIdentifier));
+
+		if (aProduct.getAlternatePartNumber() != null) {
+			insertAlternateProduct(aProduct, partNumberId, aMFGIdentifier, true);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if all the products handled so far were
+	 *         committed (or skipped by a committed round), i.e. there is nothing
+	 *         to resume.
+	 */
+	public boolean isFullyCommitted() {
+		return committedOffset == listOffset;
+	}
+
+	/**
+	 * <p>
+	 * Fetch the PARTS_MASTER rows of the given part numbers that were not looked
+	 * up yet, by chunks of the lookup size (one query per chunk).
+	 * </p>
+	 * 
+	 * @param aTruncatedPNs
+	 *            the truncated part numbers to look up.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private void lookupPartNumbers(Collection<String> aTruncatedPNs) throws SQLException {
+		List<String> unknownPNs = new ArrayList<>(aTruncatedPNs.size());
+		for (String truncatedPN : aTruncatedPNs) {
+			if (partNumbers.isKnown(truncatedPN)) {
+				continue;
+			}
+			if (partNumberFilter != null && truncatedPN != null && !partNumberFilter.mightContain(truncatedPN)) {
+				// Definitely not stored: no query.
+				partNumbers.markKnown(truncatedPN);
+				filteredCount++;
+			} else {
+				unknownPNs.add(truncatedPN);
+			}
+		}
+		if (unknownPNs.size() == 1) {
+			String truncatedPN = unknownPNs.get(0);
+			OraclePreparedStatement productStatement = statements.get(PN_SEARCH);
+			productStatement.setString(1, truncatedPN);
+			partNumbers.markKnown(truncatedPN);
+			try (OracleResultSet result = statements.executeQuery(PN_SEARCH);) {
+				while (result.next()) {
+					partNumbers.addLoaded(truncatedPN, new ProductAndMfgDTO(result.getNUMBER(1), result.getNUMBER(2)));
+				}
+			}
+			return;
+		}
+		for (int chunkStart = 0; chunkStart < unknownPNs.size(); chunkStart += lookupSize) {
+			List<String> chunk = unknownPNs.subList(chunkStart, Math.min(chunkStart + lookupSize, unknownPNs.size()));
+			OraclePreparedStatement lookupStatement = statements.get(partNumberLookup);
+			for (int i = 0; i < lookupSize; i++) {
+				if (i < chunk.size()) {
+					lookupStatement.setString(i + 1, chunk.get(i));
+				} else {
+					// Pad the IN-list so that a single statement is prepared.
+					lookupStatement.setNull(i + 1, Types.VARCHAR);
+				}
+			}
+			lookupStatement.setFetchSize(lookupSize);
+			for (String truncatedPN : chunk) {
+				partNumbers.markKnown(truncatedPN);
+			}
+			try (OracleResultSet result = statements.executeQuery(partNumberLookup);) {
+				while (result.next()) {
+					partNumbers.addLoaded(result.getString(1),
+							new ProductAndMfgDTO(result.getNUMBER(2), result.getNUMBER(3)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Look up the part numbers (and alternate part numbers) of the given products
+	 * in a few queries, before they are handled one by one.
+	 * </p>
+	 * 
+	 * @param aProducts
+	 *            the products about to be handled.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private void prefetchPartNumbers(List<NormalizedProduct> aProducts) throws SQLException {
+		Set<String> truncatedPNs = new LinkedHashSet<>(aProducts.size() * 2);
+		for (NormalizedProduct product : aProducts) {
+			truncatedPNs.add(product.getTruncatedPN());
+			if (product.getTruncatedAlternatePN() != null) {
+				truncatedPNs.add(product.getTruncatedAlternatePN());
+			}
+		}
+		lookupPartNumbers(truncatedPNs);
+	}
+
+	/**
+	 * <p>
+	 * Make sure the manufacturers and UOMs used by the given products exist in
+	 * DB: the missing ones are inserted and committed.
+	 * </p>
+	 * 
+	 * @param aProductList
+	 *            the products to use.
+	 * @throws SQLException
+	 *             if the codes cannot be created (nothing is committed).
+	 */
+	public void prepareCodes(List<Product> aProductList) throws SQLException {
+		try {
+			for (Product product : aProductList) {
+				getManufacturerOrInsert(NormalizedProduct.of(product).getTruncatedManufacturer());
+				getUOMOrInsert(product.getUnitOfMeasure());
+			}
+		} catch (SQLException sqle) {
+			rollbackRound();
+			throw sqle;
+		}
+		commitBatch();
+	}
+
+	/**
+	 * <b>Reconcile the given {@link Product} list with PARTS_MASTER.</b>
+	 * <p>
+	 * Instead of looking the part numbers up, the PARTS_MASTER rows are
+	 * streamed once (a full scan) and joined with the part numbers (and
+	 * alternate part numbers) of the products, kept in a hash set. Each product
+	 * is then classified as new (PN not stored), duplicate (PN stored with the
+	 * same manufacturer) or alternate-needed (PN stored with other
+	 * manufacturers). The new and alternate-needed products are then handled
+	 * as by {@link #handleProductList(List)}, without any lookup; the
+	 * duplicates are skipped. Meant for the full catalog imports, most part
+	 * numbers being already stored.
+	 * </p>
+	 * 
+	 * @param aProductList
+	 *            the product list to use.
+	 */
+	public void reconcileProductList(List<Product> aProductList) {
+		long t0 = System.currentTimeMillis();
+		List<NormalizedProduct> products = new ArrayList<>(aProductList.size());
+		Set<String> truncatedPNs = new HashSet<>();
+		for (Product product : aProductList) {
+			NormalizedProduct normalized = NormalizedProduct.of(product);
+			products.add(normalized);
+			if (normalized.getTruncatedPN() != null) {
+				truncatedPNs.add(normalized.getTruncatedPN());
+			}
+			if (normalized.getTruncatedAlternatePN() != null) {
+				truncatedPNs.add(normalized.getTruncatedAlternatePN());
+			}
+		}
+		try {
+			int matchedCount = streamPartsMaster(truncatedPNs);
+			LOGGER.info("PARTS_MASTER joined in " + (System.currentTimeMillis() - t0) + " ms: " + matchedCount
+					+ " rows matched for " + truncatedPNs.size() + " part numbers.");
+		} catch (SQLException sqle) {
+			LOGGER.error("Error while streaming PARTS_MASTER. The remaining part numbers will be looked up.", sqle);
+		}
+		List<Product> newProducts = new ArrayList<>();
+		List<Product> alternateProducts = new ArrayList<>();
+		int duplicateCount = 0;
+		for (NormalizedProduct product : products) {
+			List<ProductAndMfgDTO> storedProducts = partNumbers.get(product.getTruncatedPN());
+			if (storedProducts == null || storedProducts.isEmpty()) {
+				// Not stored (or not merged, then looked up while handled).
+				newProducts.add(product);
+				continue;
+			}
+			NUMBER mfgId = manufacturers.get(product.getTruncatedManufacturer());
+			boolean sameManufacturer = false;
+			for (ProductAndMfgDTO storedProduct : storedProducts) {
+				if (mfgId != null && storedProduct.getManufacturerKey().longValue() == mfgId.longValue()) {
+					sameManufacturer = true;
+					break;
+				}
+			}
+			if (!sameManufacturer) {
+				alternateProducts.add(product);
+			} else {
+				duplicateCount++;
+			}
+		}
+		LOGGER.info("Reconciled " + products.size() + " products: " + newProducts.size() + " new, "
+				+ alternateProducts.size() + " needing an alternate, " + duplicateCount + " duplicates skipped.");
+		handleProducts(newProducts);
+		handleProducts(alternateProducts);
+		completeProductList();
+	}
+
+	/**
+	 * <p>
+	 * The products handled so far were committed: record the progress, in the
+	 * journal if any.
+	 * </p>
+	 */
+	private void recordCommit() {
+		committedOffset = listOffset;
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.append(listOffset, handledCount, skippedCount);
+		} catch (IOException ioe) {
+			dropJournal(ioe);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Replay the products of the rolled back round one by one, each within its
+	 * own savepoint: a failing product is rolled back alone and skipped, the
+	 * others are committed together.
+	 * </p>
+	 */
+	private void replayRound() {
+		commitInterval.onFailure();
+		int replayedCount = 0;
+		try {
+			for (NormalizedProduct product : pendingProducts) {
+				Savepoint savepoint = connection.setSavepoint();
+				int manufacturersSavepoint = manufacturers.savepoint();
+				int unitsOfMeasureSavepoint = unitsOfMeasure.savepoint();
+				int partNumbersSavepoint = partNumbers.savepoint();
+				int alternateLinksSavepoint = alternateLinks.savepoint();
+				try {
+					handleProduct(product);
+					flushBatch();
+					replayedCount++;
+				} catch (SQLException sqle) {
+					LOGGER.error("Product skipped: " + product.getPartNumber() + "; manufacturer: "
+							+ product.getManufacturer(), sqle);
+					skippedCount++;
+					clearBatches();
+					connection.rollback(savepoint);
+					manufacturers.rollback(manufacturersSavepoint);
+					unitsOfMeasure.rollback(unitsOfMeasureSavepoint);
+					partNumbers.rollback(partNumbersSavepoint);
+					alternateLinks.rollback(alternateLinksSavepoint);
+				}
+			}
+			connection.commit();
+			manufacturers.commit();
+			unitsOfMeasure.commit();
+			partNumbers.commit();
+			alternateLinks.commit();
+			handledCount += replayedCount;
+			recordCommit();
+		} catch (SQLException sqle) {
+			LOGGER.error("Error while replaying " + pendingProducts.size() + " products. They are skipped.", sqle);
+			skippedCount += pendingProducts.size() - replayedCount;
+			try {
+				rollbackRound();
+			} catch (SQLException rollbackException) {
+				LOGGER.error("Error while rolling back the replayed products.", rollbackException);
+			}
+		} finally {
+			pendingProducts.clear();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Discard the current round: the pending batches, the transaction and the
+	 * codes and parts added to the dictionaries since the last commit.
+	 * </p>
+	 * 
+	 * @throws SQLException
+	 *             if an error occurs while rolling back.
+	 */
+	private void rollbackRound() throws SQLException {
+		try {
+			clearBatches();
+			connection.rollback();
+		} finally {
+			manufacturers.rollback();
+			unitsOfMeasure.rollback();
+			partNumbers.rollback();
+			alternateLinks.rollback();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Record the progress of the import in the given journal at each commit.
+	 * If the journal resumes a previous run, its committed products are
+	 * skipped (neither queried nor written again).
+	 * </p>
+	 * 
+	 * @param aJournal
+	 *            the journal, opened before any product is handled.
+	 */
+	public void setJournal(ProgressJournal aJournal) {
+		journal = aJournal;
+		resumeOffset = aJournal.getCommittedOffset();
+		committedOffset = resumeOffset;
+		handledCount = aJournal.getHandledCount();
+		skippedCount = aJournal.getSkippedCount();
+	}
+
+	/**
+	 * <p>
+	 * Stream all the PARTS_MASTER rows and keep the rows of the given part
+	 * numbers; once all the rows are read, the rows of each part number
+	 * (possibly none) are added to the index, which then knows it. The rows are
+	 * not sorted by the DB: a collation order could differ from the order of
+	 * {@link String#compareTo(String)}.
+	 * </p>
+	 * 
+	 * @param aTruncatedPNs
+	 *            the truncated part numbers.
+	 * @return the number of rows matching a part number.
+	 * @throws SQLException
+	 *             if an error occurs while querying the DB.
+	 */
+	private int streamPartsMaster(Set<String> aTruncatedPNs) throws SQLException {
+		Map<String, List<ProductAndMfgDTO>> rowsByPN = new HashMap<>();
+		int matchedCount = 0;
+		try (OraclePreparedStatement statement = (OraclePreparedStatement) connection.prepareStatement(PN_SNAPSHOT);) {
+			statement.setFetchSize(ConnectionProperties.getInstance().getReconcileFetchSize());
+			try (OracleResultSet result = (OracleResultSet) statement.executeQuery();) {
+				while (result.next()) {
+					String rowPN = result.getString(1);
+					if (aTruncatedPNs.contains(rowPN)) {
+						rowsByPN.computeIfAbsent(rowPN, pn -> new ArrayList<>(2))
+								.add(new ProductAndMfgDTO(result.getNUMBER(2), result.getNUMBER(3)));
+						matchedCount++;
+					}
+				}
+			}
+		}
+		for (String truncatedPN : aTruncatedPNs) {
+			addLoaded(truncatedPN, rowsByPN.getOrDefault(truncatedPN, Collections.emptyList()));
+		}
+		return matchedCount;
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * <p>
+ * Append-only journal of the progress of an import, so that an interrupted
+ * import can be resumed where it was committed. A record is appended (and
+ * forced to the disk) after each commit of the DAO: the offset of the products
+ * committed so far in the imported list, and the handled and skipped counts.
+ * The alternate links are inserted in the transaction of their products, so
+ * the journal needs no record of them: if the import stops between a commit
+ * and its record, the resumed run handles the committed products again and
+ * finds their part numbers stored.
+ * </p>
+ * <p>
+ * The file starts with {@link #MAGIC}, {@link #VERSION}, the size and the
+ * modification time of the imported file (a journal is only resumed for the
+ * same file). Each record is its length (an <code>int</code>), the CRC-32 of
+ * its content (an <code>int</code>) and its content: the offset, the handled
+ * count and the skipped count (<code>int</code>s). A torn last record is
+ * ignored.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class ProgressJournal implements Closeable {
+
+	/**
+	 * <p>
+	 * The size of the header of the file.
+	 * </p>
+	 */
+	private static final int HEADER_SIZE = 4 + 1 + 8 + 8;
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(ProgressJournal.class);
+
+	/**
+	 * <p>
+	 * The first bytes of a journal file.
+	 * </p>
+	 */
+	private static final int MAGIC = 0x42534A4E;
+
+	/**
+	 * <p>
+	 * The length of the content of a record.
+	 * </p>
+	 */
+	private static final int RECORD_LENGTH = 3 * 4;
+
+	/**
+	 * <p>
+	 * The version of the file format.
+	 * </p>
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * <p>
+	 * Open the journal of an import: the journal of a previous run of the same
+	 * file is read when resuming, otherwise a new journal is started.
+	 * </p>
+	 * 
+	 * @param aJournalFile
+	 *            the journal file.
+	 * @param aSourceFile
+	 *            the imported file.
+	 * @param isResume
+	 *            <code>true</code> to resume the previous run.
+	 * @return the journal.
+	 * @throws IOException
+	 *             if the journal cannot be read or written.
+	 */
+	public static ProgressJournal open(Path aJournalFile, Path aSourceFile, boolean isResume) throws IOException {
+		ProgressJournal journal = new ProgressJournal(aJournalFile);
+		long sourceSize = Files.size(aSourceFile);
+		long sourceTime = Files.getLastModifiedTime(aSourceFile).toMillis();
+		journal.channel = FileChannel.open(aJournalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			if (isResume && journal.read(sourceSize, sourceTime)) {
+				LOGGER.info("Resuming the import after " + journal.committedOffset + " products.");
+			} else {
+				if (isResume) {
+					LOGGER.warn("No journal of this file to resume: the import starts over.");
+				}
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).put((byte) VERSION).putLong(sourceSize).putLong(sourceTime).flip();
+				journal.channel.truncate(0);
+				journal.channel.write(header, 0);
+				journal.channel.force(false);
+				journal.channel.position(HEADER_SIZE);
+			}
+		} catch (IOException ioe) {
+			journal.channel.close();
+			throw ioe;
+		}
+		return journal;
+	}
+
+	/**
+	 * <p>
+	 * The channel of the journal file.
+	 * </p>
+	 */
+	private FileChannel channel;
+
+	/**
+	 * <p>
+	 * The offset of the products committed by the previous run.
+	 * </p>
+	 */
+	private int committedOffset;
+
+	/**
+	 * <p>
+	 * The journal file.
+	 * </p>
+	 */
+	private Path file;
+
+	/**
+	 * <p>
+	 * The number of products handled by the previous run.
+	 * </p>
+	 */
+	private int handledCount;
+
+	/**
+	 * <p>
+	 * The number of products skipped by the previous run.
+	 * </p>
+	 */
+	private int skippedCount;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the journal file.
+	 */
+	private ProgressJournal(Path aFile) {
+		file = aFile;
+	}
+
+	/**
+	 * <p>
+	 * Append a record and force it to the disk.
+	 * </p>
+	 * 
+	 * @param anOffset
+	 *            the offset of the products committed so far.
+	 * @param aHandledCount
+	 *            the number of products handled so far.
+	 * @param aSkippedCount
+	 *            the number of products skipped so far.
+	 * @throws IOException
+	 *             if the journal cannot be written.
+	 */
+	public void append(int anOffset, int aHandledCount, int aSkippedCount) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(8 + RECORD_LENGTH);
+		record.position(8);
+		record.putInt(anOffset).putInt(aHandledCount).putInt(aSkippedCount);
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 8, RECORD_LENGTH);
+		record.putInt(0, RECORD_LENGTH).putInt(4, (int) crc.getValue());
+		record.flip();
+		while (record.hasRemaining()) {
+			channel.write(record);
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * <p>
+	 * Close the journal and delete it: the import is complete.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             if the journal cannot be deleted.
+	 */
+	public void delete() throws IOException {
+		close();
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * @return the offset of the products committed by the previous run (0 if
+	 *         not resumed).
+	 */
+	public int getCommittedOffset() {
+		return committedOffset;
+	}
+
+	/**
+	 * @return the number of products handled by the previous run.
+	 */
+	public int getHandledCount() {
+		return handledCount;
+	}
+
+	/**
+	 * @return the number of products skipped by the previous run.
+	 */
+	public int getSkippedCount() {
+		return skippedCount;
+	}
+
+	/**
+	 * <p>
+	 * Read the records of the previous run and position the channel after the
+	 * last valid one (a torn record is truncated).
+	 * </p>
+	 * 
+	 * @param aSourceSize
+	 *            the size of the imported file.
+	 * @param aSourceTime
+	 *            the modification time of the imported file.
+	 * @return <code>false</code> if the journal is not one of the imported
+	 *         file.
+	 * @throws IOException
+	 *             if the journal cannot be read.
+	 */
+	private boolean read(long aSourceSize, long aSourceTime) throws IOException {
+		if (channel.size() < HEADER_SIZE) {
+			return false;
+		}
+		ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+		int read = 0;
+		while (content.hasRemaining() && read >= 0) {
+			read = channel.read(content, content.position());
+		}
+		content.flip();
+		if (content.getInt() != MAGIC || content.get() != VERSION || content.getLong() != aSourceSize
+				|| content.getLong() != aSourceTime) {
+			return false;
+		}
+		int validEnd = content.position();
+		CRC32 crc = new CRC32();
+		while (content.remaining() >= 8) {
+			int length = content.getInt();
+			int checksum = content.getInt();
+			if (length != RECORD_LENGTH || length > content.remaining()) {
+				break;
+			}
+			crc.reset();
+			crc.update(content.array(), content.position(), length);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			committedOffset = content.getInt();
+			handledCount = content.getInt();
+			skippedCount = content.getInt();
+			validEnd = content.position();
+		}
+		channel.truncate(validEnd);
+		channel.position(validEnd);
+		return true;
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import oracle.jdbc.OraclePreparedStatement;
+import oracle.jdbc.OracleResultSet;
+import oracle.sql.NUMBER;
+
+/**
+ * <p>
+ * Hand out the values of an Oracle sequence locally. The values are reserved
+ * by blocks in a single round trip, so that the inserts know their keys before
+ * being sent and don't need a <code>RETURNING ... INTO</code> clause.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class SequenceKeyAllocator {
+
+	/**
+	 * <p>
+	 * The query reserving a block of values.
+	 * </p>
+	 */
+	private String blockQuery;
+
+	/**
+	 * <p>
+	 * The number of values to reserve per round trip.
+	 * </p>
+	 */
+	private int blockSize;
+
+	/**
+	 * <p>
+	 * The values reserved but not handed out yet.
+	 * </p>
+	 */
+	private Deque<NUMBER> keys;
+
+	/**
+	 * <p>
+	 * The statements to use to query the sequence.
+	 * </p>
+	 */
+	private StatementCache statements;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aStatements
+	 *            the statements to use to query the sequence.
+	 * @param aSequenceName
+	 *            the name of the sequence (e.g. G_PNM_AUTO_KEY).
+	 * @param aBlockSize
+	 *            the number of values to reserve per round trip.
+	 */
+	public SequenceKeyAllocator(StatementCache aStatements, String aSequenceName, int aBlockSize) {
+		statements = aStatements;
+		blockSize = Math.max(1, aBlockSize);
+		blockQuery = "SELECT " + aSequenceName + ".NEXTVAL FROM DUAL CONNECT BY LEVEL <= ?";
+		keys = new ArrayDeque<>(blockSize);
+	}
+
+	/**
+	 * @return the next value of the sequence, reserving a new block first if
+	 *         needed.
+	 * @throws SQLException
+	 *             if an error occurs while querying the sequence.
+	 */
+	public NUMBER next() throws SQLException {
+		if (keys.isEmpty()) {
+			OraclePreparedStatement keyStatement = statements.get(blockQuery);
+			keyStatement.setInt(1, blockSize);
+			keyStatement.setFetchSize(blockSize);
+			try (OracleResultSet result = statements.executeQuery(blockQuery);) {
+				while (result.next()) {
+					keys.add(result.getNUMBER(1));
+				}
+			}
+		}
+		return keys.poll();
+	}
+}
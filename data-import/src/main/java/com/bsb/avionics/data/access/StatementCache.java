@@ -0,0 +1,209 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.access;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import oracle.jdbc.OraclePreparedStatement;
+import oracle.jdbc.OracleResultSet;
+
+/**
+ * <p>
+ * Keep the prepared statements of a connection open for the whole life of the
+ * DAO using it, so that each SQL string is parsed once. The statements are
+ * executed through the cache, which counts the executions (the round trips)
+ * of each one: a query or a batch (whatever its number of rows) is one
+ * execution.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class StatementCache {
+
+	/**
+	 * <p>
+	 * The connection the statements are prepared on.
+	 * </p>
+	 */
+	private Connection connection;
+
+	/**
+	 * <p>
+	 * The number of executions, by SQL string.
+	 * </p>
+	 */
+	private Map<String, Long> executionCounts;
+
+	/**
+	 * <p>
+	 * The SQL strings of the statements having rows added to their batch and
+	 * not executed yet.
+	 * </p>
+	 */
+	private Set<String> pendingBatches;
+
+	/**
+	 * <p>
+	 * The prepared statements, by SQL string.
+	 * </p>
+	 */
+	private Map<String, OraclePreparedStatement> statements;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aConnection
+	 *            the connection to prepare the statements on.
+	 */
+	public StatementCache(Connection aConnection) {
+		connection = aConnection;
+		executionCounts = new LinkedHashMap<>();
+		pendingBatches = new HashSet<>();
+		statements = new LinkedHashMap<>();
+	}
+
+	/**
+	 * <p>
+	 * Add the parameters bound to the statement of the given SQL to its batch.
+	 * </p>
+	 * 
+	 * @param aSql
+	 *            the SQL of the statement (prepared by {@link #get(String)}).
+	 * @throws SQLException
+	 *             if the parameters cannot be added.
+	 */
+	public void addBatch(String aSql) throws SQLException {
+		statements.get(aSql).addBatch();
+		pendingBatches.add(aSql);
+	}
+
+	/**
+	 * <p>
+	 * Discard the batch of the statement of the given SQL, if prepared.
+	 * </p>
+	 * 
+	 * @param aSql
+	 *            the SQL of the statement.
+	 * @throws SQLException
+	 *             if the batch cannot be cleared.
+	 */
+	public void clearBatch(String aSql) throws SQLException {
+		OraclePreparedStatement statement = statements.get(aSql);
+		if (statement != null) {
+			statement.clearBatch();
+			pendingBatches.remove(aSql);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Close all the prepared statements.
+	 * </p>
+	 * 
+	 * @throws SQLException
+	 *             if an error occurs while closing a statement.
+	 */
+	public void close() throws SQLException {
+		SQLException firstException = null;
+		for (OraclePreparedStatement statement : statements.values()) {
+			try {
+				statement.close();
+			} catch (SQLException sqle) {
+				if (firstException == null) {
+					firstException = sqle;
+				}
+			}
+		}
+		statements.clear();
+		pendingBatches.clear();
+		if (firstException != null) {
+			throw firstException;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Send the batch of the statement of the given SQL to the DB, if it has
+	 * rows, and count one execution of it.
+	 * </p>
+	 * 
+	 * @param aSql
+	 *            the SQL of the statement.
+	 * @throws SQLException
+	 *             if the batch fails.
+	 */
+	public void executeBatch(String aSql) throws SQLException {
+		if (pendingBatches.remove(aSql)) {
+			executionCounts.merge(aSql, 1L, Long::sum);
+			statements.get(aSql).executeBatch();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Execute the query of the given SQL, with the parameters bound to its
+	 * statement, and count one execution of it.
+	 * </p>
+	 * 
+	 * @param aSql
+	 *            the SQL of the query (prepared by {@link #get(String)}).
+	 * @return the result set, to be closed by the caller.
+	 * @throws SQLException
+	 *             if the query fails.
+	 */
+	public OracleResultSet executeQuery(String aSql) throws SQLException {
+		executionCounts.merge(aSql, 1L, Long::sum);
+		return (OracleResultSet) statements.get(aSql).executeQuery();
+	}
+
+	/**
+	 * <p>
+	 * Get the statement for the given SQL, preparing it on first use, to bind
+	 * its parameters.
+	 * </p>
+	 * 
+	 * @param aSql
+	 *            the SQL to prepare.
+	 * @return the prepared statement (not to be closed by the caller).
+	 * @throws SQLException
+	 *             if the statement cannot be prepared.
+	 */
+	public OraclePreparedStatement get(String aSql) throws SQLException {
+		OraclePreparedStatement statement = statements.get(aSql);
+		if (statement == null) {
+			statement = (OraclePreparedStatement) connection.prepareStatement(aSql);
+			statements.put(aSql, statement);
+		}
+		return statement;
+	}
+
+	/**
+	 * @return the number of executions, by SQL string, in order of first use.
+	 */
+	public Map<String, Long> getExecutionCounts() {
+		return Collections.unmodifiableMap(executionCounts);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		StringBuilder counts = new StringBuilder();
+		for (Entry<String, Long> count : executionCounts.entrySet()) {
+			counts.append(count.getValue()).append(" x ").append(count.getKey()).append(System.lineSeparator());
+		}
+		return counts.toString();
+	}
+}
@@ -1,94 +1,523 @@
-/**
- * 
- */
-package com.bsb.avionics.data.controller;
-
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-import org.kohsuke.args4j.Option;
-
-import com.bsb.avionics.data.access.ProductDAO;
-import com.bsb.avionics.data.importer.AccessImporter;
-import com.bsb.avionics.data.importer.DataImporter;
-import com.bsb.avionics.data.importer.XLSXDataImporter;
-import com.bsb.avionics.model.Product;
-
-/**
- * <p>
- * Main controller launching the genuine import for the currently handled file.
- * </p>
- * 
- * @author Marc PEZZETTI
- *
- */
-public class MainController {
-
-	/**
-	 * The logger to use.
-	 */
-	private static final Logger LOGGER = LogManager.getLogger();
-
-	/**
-	 * The file to import. It can either be a XLSX or a MDB file.
-	 */
-	private Path fileToImport;
-
-	/**
-	 * <p>
-	 * Default constructor.
-	 * </p>
-	 */
-	public MainController() {
-	}
-
-	/**
-	 * <p>
-	 * Launch the main import process.
-	 * </p>
-	 */
-	public void launchProcess() {
-		String fileToImportName = this.fileToImport.getFileName().toString();
-		String fileExtension = fileToImportName.substring(fileToImportName.lastIndexOf(".") + 1);
-		DataImporter importer;
-		switch (fileExtension.toUpperCase()) {
-		case "MDB":
-		case "ACCDB":
-			importer = new AccessImporter(this.fileToImport);
-			break;
-		case "XLSX":
-			importer = new XLSXDataImporter(this.fileToImport);
-			break;
-		default:
-			importer = null;
-			break;
-		}
-		importer.retrieveData();
-		List<Product> products = importer.getProductsByPN().values().stream().flatMap(Set::stream)
-				.collect(Collectors.toList());
-
-		ProductDAO dao = new ProductDAO();
-		dao.handleProductList(products);
-	}
-
-	/**
-	 * @param aFileToImport
-	 *            the file to import to use.
-	 */
-	@Option(name = "-file", aliases = {
-			"-f" }, usage = "Sets the file to import in Quantum - either XLSX, MDB or ACCDB file")
-	public void setFileToImport(String aFileToImport) {
-		Path path = Paths.get(aFileToImport);
-		if (Files.exists(path)) {
-			this.fileToImport = path;
-		} else {
-			LOGGER.error("Provided file doesn't exists.");
-		}
-	}
-}
+/**
+ * 
+ */
+package com.bsb.avionics.data.controller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.kohsuke.args4j.Option;
+
+import com.bsb.avionics.data.access.BulkProductLoader;
+import com.bsb.avionics.data.access.FingerprintStore;
+import com.bsb.avionics.data.access.NormalizedProduct;
+import com.bsb.avionics.data.access.ParallelProductWriter;
+import com.bsb.avionics.data.access.ProductDAO;
+import com.bsb.avionics.data.access.ProgressJournal;
+import com.bsb.avionics.data.importer.AccessImporter;
+import com.bsb.avionics.data.importer.CSVDataImporter;
+import com.bsb.avionics.data.importer.DataImporter;
+import com.bsb.avionics.data.importer.ExternalProductSorter;
+import com.bsb.avionics.data.importer.ParallelXLSXDataImporter;
+import com.bsb.avionics.data.importer.ProductFileImporter;
+import com.bsb.avionics.data.importer.ProductFileWriter;
+import com.bsb.avionics.data.importer.XLSXDataImporter;
+import com.bsb.avionics.model.Product;
+import com.bsb.avionics.model.ProductStore;
+import com.bsb.avionics.utils.ConnectionProperties;
+
+/**
+ * <p>
+ * Main controller launching the genuine import for the currently handled file.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class MainController {
+
+	/**
+	 * The logger to use.
+	 */
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	/**
+	 * Whether the products are loaded in a staging table then written with
+	 * set-based statements (full catalog refreshes) rather than row by row.
+	 */
+	private boolean bulk;
+
+	/**
+	 * Whether the file is only converted to a product file, not imported.
+	 */
+	private boolean convertOnly;
+
+	/**
+	 * The file to import. It can either be a XLSX or a MDB file.
+	 */
+	private Path fileToImport;
+
+	/**
+	 * The fingerprints of the products of the file (incremental mode), once
+	 * read.
+	 */
+	private FingerprintStore fingerprints;
+
+	/**
+	 * Whether only the products new or changed since the last import of the
+	 * file are imported.
+	 */
+	private boolean incremental;
+
+	/**
+	 * Whether the products are reconciled with a full scan of PARTS_MASTER
+	 * (hash join) rather than looked up by chunks.
+	 */
+	private boolean reconcile;
+
+	/**
+	 * Whether the previous import of the file is resumed from its progress
+	 * journal.
+	 */
+	private boolean resume;
+
+	/**
+	 * Whether the products are written while the file is read (streaming mode)
+	 * rather than once it was fully read.
+	 */
+	private boolean streaming;
+
+	/**
+	 * The number of parallel workers (each with its own connection) to use to
+	 * write the products.
+	 */
+	private int workerCount = 1;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 */
+	public MainController() {
+	}
+
+	/**
+	 * <p>
+	 * Close the progress journal of the import: it is deleted if there is
+	 * nothing to resume, kept otherwise (see {@link #setResume(boolean)}).
+	 * </p>
+	 * 
+	 * @param aJournal
+	 *            the journal, may be <code>null</code>.
+	 * @param isComplete
+	 *            <code>true</code> if the whole data source was read and
+	 *            committed.
+	 */
+	private void closeJournal(ProgressJournal aJournal, boolean isComplete) {
+		if (aJournal == null) {
+			return;
+		}
+		try {
+			if (isComplete) {
+				aJournal.delete();
+			} else {
+				LOGGER.warn("Some products were not committed: run again with -resume to resume the import.");
+				aJournal.close();
+			}
+		} catch (IOException ioe) {
+			LOGGER.error("Exception while closing the progress journal.", ioe);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Write the products of the data source to a product file, to be imported
+	 * later without parsing the data source again. The product file is only
+	 * written if the data source is read to the end and gives products.
+	 * </p>
+	 * 
+	 * @param anImporter
+	 *            the importer to read.
+	 * @param aProductFile
+	 *            the product file to write.
+	 */
+	private void convert(DataImporter anImporter, Path aProductFile) {
+		long t0 = System.currentTimeMillis();
+		boolean compressed = "deflate".equalsIgnoreCase(ConnectionProperties.getInstance().getProductFileCompression());
+		try (Stream<Product> products = anImporter.stream();
+				ProductFileWriter writer = new ProductFileWriter(aProductFile, compressed)) {
+			Iterator<Product> iterator = products.iterator();
+			while (iterator.hasNext()) {
+				writer.write(iterator.next());
+			}
+			if (writer.getCount() == 0) {
+				// An importer that cannot open its file gives no products.
+				LOGGER.error("No products read from the data source: no product file is written.");
+				return;
+			}
+			writer.finish();
+			LOGGER.info("Converted " + writer.getCount() + " products to " + aProductFile + " in "
+					+ (System.currentTimeMillis() - t0) + " ms.");
+		} catch (IOException | UncheckedIOException e) {
+			LOGGER.error("Exception while writing the product file.", e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Import the products of the data source in PN order, within a memory
+	 * budget: the products are sorted by an {@link ExternalProductSorter}, then
+	 * fed to the DAO by chunks from the merged runs.
+	 * </p>
+	 * 
+	 * @param anImporter
+	 *            the importer to read.
+	 * @param aSpillThreshold
+	 *            the number of products kept in memory before a sorted run is
+	 *            spilled.
+	 */
+	private void importSorted(DataImporter anImporter, int aSpillThreshold) {
+		ProductDAO dao = new ProductDAO();
+		ProgressJournal journal = openJournal(dao);
+		try (ExternalProductSorter sorter = new ExternalProductSorter(aSpillThreshold)) {
+			try (Stream<Product> products = anImporter.stream()) {
+				Iterator<Product> iterator = products.iterator();
+				while (iterator.hasNext()) {
+					sorter.add(iterator.next());
+				}
+			}
+			LOGGER.info("Products sorted in " + sorter.getRunCount() + " runs.");
+			int chunkSize = dao.getLookupSize();
+			List<Product> chunk = new ArrayList<>(chunkSize);
+			try (Stream<Product> sortedProducts = sorter.sortedStream()) {
+				Iterator<Product> iterator = sortedProducts.iterator();
+				while (iterator.hasNext()) {
+					chunk.add(iterator.next());
+					if (chunk.size() == chunkSize || !iterator.hasNext()) {
+						dao.handleProductChunk(NormalizedProduct.normalizeAll(chunk));
+						chunk.clear();
+					}
+				}
+			}
+			dao.completeProductList();
+			closeJournal(journal, dao.isFullyCommitted());
+		} catch (IOException | UncheckedIOException e) {
+			LOGGER.error("Exception while sorting the products.", e);
+			closeJournal(journal, false);
+		} finally {
+			try {
+				dao.dispose();
+			} catch (SQLException sqle) {
+				LOGGER.error("Error while closing the connection.", sqle);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Launch the main import process.
+	 * </p>
+	 */
+	public void launchProcess() {
+		String fileToImportName = this.fileToImport.getFileName().toString();
+		String fileExtension = fileToImportName.substring(fileToImportName.lastIndexOf(".") + 1);
+		DataImporter importer;
+		switch (fileExtension.toUpperCase()) {
+		case "MDB":
+		case "ACCDB":
+			importer = new AccessImporter(this.fileToImport,
+					"memory".equalsIgnoreCase(ConnectionProperties.getInstance().getAccessChannel()));
+			break;
+		case "CSV":
+			importer = new CSVDataImporter(this.fileToImport, ',');
+			break;
+		case "TSV":
+			importer = new CSVDataImporter(this.fileToImport, '\t');
+			break;
+		case "PRODUCTS":
+			importer = new ProductFileImporter(this.fileToImport);
+			break;
+		case "XLSX":
+			if ("poi".equalsIgnoreCase(ConnectionProperties.getInstance().getXLSXReader())) {
+				importer = new XLSXDataImporter(this.fileToImport);
+			} else {
+				importer = new ParallelXLSXDataImporter(this.fileToImport);
+			}
+			break;
+		default:
+			importer = null;
+			break;
+		}
+		if (convertOnly) {
+			convert(importer, this.fileToImport.resolveSibling(fileToImportName + ".products"));
+			return;
+		}
+		if (resume && (bulk || reconcile || workerCount > 1)) {
+			LOGGER.error("Only the imports with a single worker (neither bulk nor reconciled) can be resumed: "
+					+ "-resume cannot be combined with -bulk, -reconcile or -workers.");
+			return;
+		}
+		if (bulk) {
+			if (streaming || workerCount > 1) {
+				LOGGER.warn("The bulk mode reads the whole file and uses a single connection.");
+			}
+			List<Product> products = retrieveProducts(importer);
+			try (Connection connection = ProductDAO.openConnection()) {
+				new BulkProductLoader(connection, ConnectionProperties.getInstance().getBatchSize()).load(products);
+				saveFingerprints(0, true);
+			} catch (SQLException | ClassNotFoundException e) {
+				LOGGER.error("Exception while bulk loading the products.", e);
+			}
+			return;
+		}
+		if (incremental && (streaming || ConnectionProperties.getInstance().getSpillThreshold() > 0)) {
+			LOGGER.warn("The incremental mode needs the whole file: ignored by the streaming and spill modes.");
+		}
+		if (streaming) {
+			if (workerCount > 1) {
+				LOGGER.warn("The streaming mode uses a single worker.");
+			}
+			ProductDAO dao = new ProductDAO();
+			ProgressJournal journal = openJournal(dao);
+			try {
+				new ProductPipeline(importer, dao, ConnectionProperties.getInstance().getImportQueueSize()).run();
+				closeJournal(journal, dao.isFullyCommitted());
+			} catch (InterruptedException ie) {
+				LOGGER.error("Interrupted while importing the products.", ie);
+				Thread.currentThread().interrupt();
+				closeJournal(journal, false);
+			} catch (RuntimeException re) {
+				LOGGER.error("The data source could not be read to the end.", re);
+				closeJournal(journal, false);
+			} finally {
+				try {
+					dao.dispose();
+				} catch (SQLException sqle) {
+					LOGGER.error("Error while closing the connection.", sqle);
+				}
+			}
+			return;
+		}
+		int spillThreshold = ConnectionProperties.getInstance().getSpillThreshold();
+		if (spillThreshold > 0) {
+			if (workerCount > 1) {
+				LOGGER.warn("The spill mode uses a single worker.");
+			}
+			importSorted(importer, spillThreshold);
+			return;
+		}
+		List<Product> products = retrieveProducts(importer);
+
+		if (reconcile) {
+			if (workerCount > 1) {
+				LOGGER.warn("The reconciliation mode uses a single worker.");
+			}
+			ProductDAO dao = new ProductDAO();
+			try {
+				dao.reconcileProductList(products);
+				saveFingerprints(dao.getSkippedCount(), dao.isFullyCommitted());
+			} finally {
+				try {
+					dao.dispose();
+				} catch (SQLException sqle) {
+					LOGGER.error("Error while closing the connection.", sqle);
+				}
+			}
+		} else if (workerCount > 1) {
+			saveFingerprints(new ParallelProductWriter(workerCount).write(products), true);
+		} else {
+			ProductDAO dao = new ProductDAO();
+			ProgressJournal journal = openJournal(dao);
+			try {
+				dao.handleProductList(products);
+				closeJournal(journal, dao.isFullyCommitted());
+				saveFingerprints(dao.getSkippedCount(), dao.isFullyCommitted());
+			} finally {
+				try {
+					dao.dispose();
+				} catch (SQLException sqle) {
+					LOGGER.error("Error while closing the connection.", sqle);
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Open the progress journal of the import (<code>&lt;file&gt;.journal</code>)
+	 * and attach it to the DAO, resuming the previous run if asked to.
+	 * </p>
+	 * 
+	 * @param aDAO
+	 *            the DAO importing the products.
+	 * @return the journal, <code>null</code> if it cannot be opened.
+	 */
+	private ProgressJournal openJournal(ProductDAO aDAO) {
+		try {
+			ProgressJournal journal = ProgressJournal
+					.open(fileToImport.resolveSibling(fileToImport.getFileName() + ".journal"), fileToImport, resume);
+			aDAO.setJournal(journal);
+			return journal;
+		} catch (IOException ioe) {
+			LOGGER.error("Exception while opening the progress journal. The import cannot be resumed.", ioe);
+			return null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read all the products of the data source, grouped by Part Number, and
+	 * normalize them in parallel (see {@link NormalizedProduct}). In
+	 * incremental mode, only the products new or changed since the last import
+	 * of the file are kept (see {@link FingerprintStore}).
+	 * </p>
+	 * 
+	 * @param anImporter
+	 *            the importer to read.
+	 * @return the normalized products, the ones identical once truncated being
+	 *         merged.
+	 */
+	private List<Product> retrieveProducts(DataImporter anImporter) {
+		ProductStore store = anImporter.collect(ProductStore.toProductStore());
+		long t0 = System.currentTimeMillis();
+		List<Product> products = NormalizedProduct.normalizeAll(store.asList());
+		LOGGER.info("Normalized " + products.size() + " products in " + (System.currentTimeMillis() - t0) + " ms.");
+		if (incremental) {
+			fingerprints = FingerprintStore
+					.load(fileToImport.resolveSibling(fileToImport.getFileName() + ".fingerprints"));
+			products = fingerprints.filter(products);
+		}
+		return products;
+	}
+
+	/**
+	 * <p>
+	 * Save the fingerprints of the imported products (incremental mode), unless
+	 * some products were skipped or not committed: they are imported again by
+	 * the next run.
+	 * </p>
+	 * 
+	 * @param aSkippedCount
+	 *            the number of products skipped while writing (their part or
+	 *            their alternate link failed).
+	 * @param isFullyCommitted
+	 *            <code>true</code> if all the products handled were committed.
+	 */
+	private void saveFingerprints(int aSkippedCount, boolean isFullyCommitted) {
+		if (fingerprints == null) {
+			return;
+		}
+		if (aSkippedCount > 0 || !isFullyCommitted) {
+			LOGGER.warn((isFullyCommitted ? aSkippedCount + " products were skipped"
+					: "Some products were not committed") + ": the fingerprints are not saved.");
+			return;
+		}
+		try {
+			fingerprints.save();
+		} catch (IOException ioe) {
+			LOGGER.error("Exception while saving the fingerprints.", ioe);
+		}
+	}
+
+	/**
+	 * @param isBulk
+	 *            <code>true</code> to load the products through a staging table.
+	 */
+	@Option(name = "-bulk", aliases = {
+			"-b" }, usage = "Loads the products in a staging table then writes them with set-based statements (full refreshes)")
+	public void setBulk(boolean isBulk) {
+		this.bulk = isBulk;
+	}
+
+	/**
+	 * @param isConvertOnly
+	 *            <code>true</code> to only convert the file to a product file.
+	 */
+	@Option(name = "-convert", aliases = { "-c",
+			"--convert-only" }, usage = "Only converts the file to a product file (<file>.products), to be imported later with -file")
+	public void setConvertOnly(boolean isConvertOnly) {
+		this.convertOnly = isConvertOnly;
+	}
+
+	/**
+	 * @param aFileToImport
+	 *            the file to import to use.
+	 */
+	@Option(name = "-file", aliases = {
+			"-f" }, usage = "Sets the file to import in Quantum - either XLSX, MDB, ACCDB, CSV, TSV or PRODUCTS file")
+	public void setFileToImport(String aFileToImport) {
+		Path path = Paths.get(aFileToImport);
+		if (Files.exists(path)) {
+			this.fileToImport = path;
+		} else {
+			LOGGER.error("Provided file doesn't exists.");
+		}
+	}
+
+	/**
+	 * @param isIncremental
+	 *            <code>true</code> to import only the products new or changed
+	 *            since the last import of the file.
+	 */
+	@Option(name = "-incremental", aliases = {
+			"-i" }, usage = "Imports only the products new or changed since the last import of the file (fingerprints kept in <file>.fingerprints)")
+	public void setIncremental(boolean isIncremental) {
+		this.incremental = isIncremental;
+	}
+
+	/**
+	 * @param isReconcile
+	 *            <code>true</code> to reconcile the products with a snapshot of
+	 *            PARTS_MASTER instead of looking their PN up.
+	 */
+	@Option(name = "-reconcile", aliases = {
+			"-r" }, usage = "Streams PARTS_MASTER once and joins it with the products instead of looking the PNs up (full catalogs)")
+	public void setReconcile(boolean isReconcile) {
+		this.reconcile = isReconcile;
+	}
+
+	/**
+	 * @param isResume
+	 *            <code>true</code> to resume the previous import of the file.
+	 */
+	@Option(name = "-resume", aliases = {
+			"--resume" }, usage = "Resumes the interrupted import of the file: the products it committed (see <file>.journal) are skipped. Not with -bulk, -reconcile or -workers")
+	public void setResume(boolean isResume) {
+		this.resume = isResume;
+	}
+
+	/**
+	 * @param isStreaming
+	 *            <code>true</code> to write the products while the file is read.
+	 */
+	@Option(name = "-stream", aliases = {
+			"-s" }, usage = "Writes the products while the file is read instead of once it was fully read")
+	public void setStreaming(boolean isStreaming) {
+		this.streaming = isStreaming;
+	}
+
+	/**
+	 * @param aWorkerCount
+	 *            the number of parallel workers to use.
+	 */
+	@Option(name = "-workers", aliases = {
+			"-w" }, usage = "Sets the number of parallel workers (i.e. DB connections) writing the products. Default: 1")
+	public void setWorkerCount(int aWorkerCount) {
+		if (aWorkerCount > 0) {
+			this.workerCount = aWorkerCount;
+		} else {
+			LOGGER.error("The number of workers must be positive.");
+		}
+	}
+}
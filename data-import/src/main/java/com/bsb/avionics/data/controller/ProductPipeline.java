@@ -0,0 +1,198 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.data.access.NormalizedProduct;
+import com.bsb.avionics.data.access.ProductDAO;
+import com.bsb.avionics.data.importer.DataImporter;
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * Streaming import: the importer runs in its own thread and pushes the
+ * products in a bounded queue while the DAO drains it, so that the file
+ * parsing and the DB I/O overlap. When the queue is full the importer waits
+ * for the DAO (backpressure), so the whole file never sits in memory.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class ProductPipeline {
+
+	/**
+	 * <p>
+	 * Marker pushed by the importer once all the products were read.
+	 * </p>
+	 */
+	private static final Product END_OF_DATA = new Product();
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(ProductPipeline.class);
+
+	/**
+	 * <p>
+	 * Whether the DAO failed and the importer was stopped.
+	 * </p>
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * <p>
+	 * The DAO consuming the products.
+	 * </p>
+	 */
+	private ProductDAO dao;
+
+	/**
+	 * <p>
+	 * The exception or error that stopped the importer, <code>null</code> if
+	 * none.
+	 * </p>
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * <p>
+	 * The importer producing the products.
+	 * </p>
+	 */
+	private DataImporter importer;
+
+	/**
+	 * <p>
+	 * The queue between the importer and the DAO.
+	 * </p>
+	 */
+	private BlockingQueue<Product> queue;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param anImporter
+	 *            the importer producing the products.
+	 * @param aDAO
+	 *            the DAO consuming the products.
+	 * @param aQueueSize
+	 *            the maximum number of products waiting between both.
+	 */
+	public ProductPipeline(DataImporter anImporter, ProductDAO aDAO, int aQueueSize) {
+		importer = anImporter;
+		dao = aDAO;
+		queue = new ArrayBlockingQueue<>(Math.max(1, aQueueSize));
+	}
+
+	/**
+	 * <p>
+	 * Push the end marker to the queue, waiting while the queue is full. If
+	 * the DAO failed meanwhile, nobody waits for it anymore.
+	 * </p>
+	 */
+	private void end() {
+		try {
+			queue.put(END_OF_DATA);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Push a product to the queue, waiting while the queue is full.
+	 * </p>
+	 * 
+	 * @param aProduct
+	 *            the product to push.
+	 */
+	private void put(Product aProduct) {
+		try {
+			queue.put(aProduct);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the DAO.", ie);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Run the import: read the data source and write the products until the
+	 * importer is done. If the importer fails, the product list is not
+	 * completed and its failure is rethrown: the import is to be resumed. If
+	 * the DAO fails, the importer is interrupted and waited for before the
+	 * failure is rethrown, so that its data source is closed.
+	 * </p>
+	 * 
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting for the
+	 *             importer.
+	 */
+	public void run() throws InterruptedException {
+		Thread producer = new Thread(() -> {
+			try {
+				try (Stream<Product> products = importer.stream()) {
+					// Normalized here, so that the writer thread only does the DB I/O.
+					products.map(NormalizedProduct::of).forEach(this::put);
+				}
+			} catch (RuntimeException | Error e) {
+				if (!cancelled) {
+					LOGGER.error("Exception while reading the data source.", e);
+					failure = e;
+				}
+			} finally {
+				if (!cancelled) {
+					end();
+				}
+			}
+		}, "importer");
+		producer.setDaemon(true);
+		producer.start();
+
+		int chunkSize = dao.getLookupSize();
+		List<Product> chunk = new ArrayList<>(chunkSize);
+		boolean ended = false;
+		try {
+			while (!ended) {
+				// Wait for at least one product, then take whatever is already queued.
+				chunk.add(queue.take());
+				queue.drainTo(chunk, chunkSize - 1);
+				if (chunk.get(chunk.size() - 1) == END_OF_DATA) {
+					chunk.remove(chunk.size() - 1);
+					ended = true;
+				}
+				if (!chunk.isEmpty()) {
+					dao.handleProductChunk(chunk);
+					chunk.clear();
+				}
+			}
+		} finally {
+			if (!ended) {
+				// Else the importer would wait forever on the full queue.
+				cancelled = true;
+				producer.interrupt();
+			}
+			producer.join();
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw (RuntimeException) failure;
+		}
+		dao.completeProductList();
+	}
+}
@@ -1,122 +1,308 @@
-/**
- * 
- */
-package com.bsb.avionics.data.importer;
-
-import java.io.IOException;
-import java.nio.file.Path;
-import java.util.HashSet;
-import java.util.Set;
-
-import org.apache.commons.lang3.StringUtils;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-import com.bsb.avionics.model.Product;
-import com.bsb.avionics.utils.ConnectionProperties;
-import com.healthmarketscience.jackcess.Cursor;
-import com.healthmarketscience.jackcess.CursorBuilder;
-import com.healthmarketscience.jackcess.Database;
-import com.healthmarketscience.jackcess.DatabaseBuilder;
-import com.healthmarketscience.jackcess.Index;
-import com.healthmarketscience.jackcess.Row;
-import com.healthmarketscience.jackcess.Table;
-import com.healthmarketscience.jackcess.util.Joiner;
-
-/**
- * <p>
- * Data importer used to retrieve products from Microsoft's Access database.
- * </p>
- * 
- * @author Marc PEZZETTI
- *
- */
-public class AccessImporter extends DataImporter {
-
-	/**
-	 * <p>
-	 * The logger to use for this class.
-	 * </p>
-	 */
-	private static final Logger LOGGER = LogManager.getLogger(AccessImporter.class);
-
-	/**
-	 * <p>
-	 * The Microsoft Access file to use to import data.
-	 * </p>
-	 */
-	private Path mdbFile;
-
-	/**
-	 * <p>
-	 * Default constructor.
-	 * </p>
-	 * 
-	 * @param aDataPath
-	 *            the Path to the MDB file to import.
-	 */
-	public AccessImporter(Path aDataPath) {
-		super();
-		this.mdbFile = aDataPath;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public void retrieveData() {
-		ConnectionProperties properties = ConnectionProperties.getInstance();
-		DatabaseBuilder dbb = new DatabaseBuilder(this.mdbFile.toFile()).setAutoSync(false).setReadOnly(true);
-		try (Database db = dbb.open()) {
-			db.getRelationships();
-			Table productTable = db.getTable(properties.getAccessTableName());
-			Table supplementsTable = db.getTable("Supplements");
-			Index supIdIndex = productTable.getIndex("SupplementsParts");
-			Index holderIdIndex = supplementsTable.getIndex("HoldersSupplements");
-
-			Joiner supJoiner = Joiner.create(supIdIndex);
-			Joiner holderJoiner = Joiner.create(holderIdIndex);
-			Cursor productCursor = CursorBuilder.createCursor(productTable);
-			Row supHolderRow, holderRow;
-			String manufacturer, description, pn, alternatePN, uom;
-			Set<Product> products;
-			for (Row productRow : productCursor) {
-				// Perform the Joins.
-				supHolderRow = supJoiner.findFirstRow(productRow);
-				holderRow = null;
-				if (supHolderRow != null) {
-					holderRow = holderJoiner.findFirstRow(supHolderRow);
-				}
-				manufacturer = "";
-				if (holderRow != null) {
-					manufacturer = holderRow.getString("Holder");
-				}
-				description = productRow.getString(properties.getAccessTableColumnDescription());
-				pn = productRow.getString(properties.getAccessTableColumnPN());
-				alternatePN = productRow.getString("ReplacedPartNumber");
-				uom = productRow.getString(properties.getAccessTableColumnUOM());
-				if (StringUtils.isEmpty(uom)) {
-					uom = properties.getAccessTableColumnUOM();
-				}
-
-
-				Product current = new Product();
-				current.setDescription(description);
-				current.setManufacturer(manufacturer);
-				current.setNote("");
-				current.setPartNumber(pn);
-				current.setUnitOfMeasure(uom);
-				current.setAlternatePartNumber(alternatePN);
-				products = productsByPN.get(pn);
-				if (products == null) {
-					products = new HashSet<>();
-				}
-				products.add(current);
-				productsByPN.put(pn, products);
-			}
-		} catch (IOException ioe) {
-			LOGGER.error("Exception in the Access DB opening / querying.", ioe);
-		}
-	}
-
-}
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+import com.bsb.avionics.utils.ConnectionProperties;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Index;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.util.MemFileChannel;
+
+/**
+ * <p>
+ * Data importer used to retrieve products from Microsoft's Access database.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class AccessImporter extends DataImporter {
+
+	/**
+	 * <p>
+	 * The column of the alternate PN in the product table.
+	 * </p>
+	 */
+	private static final String ALTERNATE_PN_COLUMN = "ReplacedPartNumber";
+
+	/**
+	 * <p>
+	 * The column of the holder name in the holders table.
+	 * </p>
+	 */
+	private static final String HOLDER_COLUMN = "Holder";
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(AccessImporter.class);
+
+	/**
+	 * <p>
+	 * Close the database, then the memory channel it was opened on (a channel
+	 * given to the database is not closed by it).
+	 * </p>
+	 * 
+	 * @param aDatabase
+	 *            the database, <code>null</code> if not opened.
+	 * @param aChannel
+	 *            the memory channel, <code>null</code> if none.
+	 */
+	private static void close(Database aDatabase, FileChannel aChannel) {
+		try {
+			if (aDatabase != null) {
+				aDatabase.close();
+			}
+		} catch (IOException ioe) {
+			LOGGER.error("Exception while closing the Access DB.", ioe);
+		} finally {
+			if (aChannel != null) {
+				try {
+					aChannel.close();
+				} catch (IOException ioe) {
+					LOGGER.error("Exception while closing the Access DB channel.", ioe);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param anIndex
+	 *            an index.
+	 * @return the names of the columns of the index.
+	 */
+	private static List<String> getColumnNames(Index anIndex) {
+		List<String> names = new ArrayList<>();
+		for (Index.Column column : anIndex.getColumns()) {
+			names.add(column.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * @param aRow
+	 *            a row.
+	 * @param someColumns
+	 *            the columns of a key of the row's table.
+	 * @return the value of the key in the row: the value of its column, or
+	 *         the list of the values of its columns for a composite key;
+	 *         <code>null</code> if a value is missing.
+	 */
+	private static Object getKey(Row aRow, List<String> someColumns) {
+		if (someColumns.size() == 1) {
+			return aRow.get(someColumns.get(0));
+		}
+		List<Object> values = new ArrayList<>(someColumns.size());
+		for (String column : someColumns) {
+			Object value = aRow.get(column);
+			if (value == null) {
+				return null;
+			}
+			values.add(value);
+		}
+		return values;
+	}
+
+	/**
+	 * <p>
+	 * Preload the holders, then the supplements, into a hash map resolving the
+	 * key of a supplement to the name of its holder.
+	 * </p>
+	 * 
+	 * @param aSupKeyIndex
+	 *            the index of the supplements referenced by the products.
+	 * @param aHolderIdIndex
+	 *            the index of the supplements referencing the holders.
+	 * @return the names of the holders by supplement key.
+	 * @throws IOException
+	 *             if the tables cannot be read.
+	 */
+	private static Map<Object, String> loadManufacturers(Index aSupKeyIndex, Index aHolderIdIndex)
+			throws IOException {
+		Index holderKeyIndex = aHolderIdIndex.getReferencedIndex();
+		List<String> holderKeyColumns = getColumnNames(holderKeyIndex);
+		Set<String> holderColumns = new HashSet<>(holderKeyColumns);
+		holderColumns.add(HOLDER_COLUMN);
+		Map<Object, String> holders = new HashMap<>();
+		for (Row holderRow : CursorBuilder.createCursor(holderKeyIndex.getTable()).newIterable()
+				.setColumnNames(holderColumns)) {
+			holders.put(getKey(holderRow, holderKeyColumns), holderRow.getString(HOLDER_COLUMN));
+		}
+
+		List<String> supKeyColumns = getColumnNames(aSupKeyIndex);
+		List<String> supHolderColumns = getColumnNames(aHolderIdIndex);
+		Set<String> supColumns = new HashSet<>(supKeyColumns);
+		supColumns.addAll(supHolderColumns);
+		Map<Object, String> manufacturers = new HashMap<>();
+		for (Row supRow : CursorBuilder.createCursor(aSupKeyIndex.getTable()).newIterable()
+				.setColumnNames(supColumns)) {
+			String holder = holders.get(getKey(supRow, supHolderColumns));
+			if (holder != null) {
+				manufacturers.put(getKey(supRow, supKeyColumns), holder);
+			}
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Preloaded " + holders.size() + " holders and " + manufacturers.size()
+					+ " supplements with a holder.");
+		}
+		return manufacturers;
+	}
+
+	/**
+	 * <p>
+	 * <code>true</code> to load the whole file in memory before opening it.
+	 * </p>
+	 */
+	private boolean inMemory;
+
+	/**
+	 * <p>
+	 * The Microsoft Access file to use to import data.
+	 * </p>
+	 */
+	private Path mdbFile;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aDataPath
+	 *            the Path to the MDB file to import.
+	 */
+	public AccessImporter(Path aDataPath) {
+		this(aDataPath, false);
+	}
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 * 
+	 * @param aDataPath
+	 *            the Path to the MDB file to import.
+	 * @param anInMemory
+	 *            <code>true</code> to load the whole file in memory before
+	 *            opening it, <code>false</code> to read its pages from the disk.
+	 */
+	public AccessImporter(Path aDataPath, boolean anInMemory) {
+		super();
+		this.mdbFile = aDataPath;
+		this.inMemory = anInMemory;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The supplements and holders are small: they are preloaded once into a
+	 * hash map (supplement key to holder name), so that the manufacturer of each
+	 * product is resolved with a map lookup instead of two index seeks. Only
+	 * the columns used are read from the three tables.
+	 * </p>
+	 * <p>
+	 * In memory mode, the whole file is first read sequentially into a memory
+	 * channel: the random page reads no longer hit the disk (or the network
+	 * share).
+	 * </p>
+	 */
+	@Override
+	public Stream<Product> stream() {
+		ConnectionProperties properties = ConnectionProperties.getInstance();
+		DatabaseBuilder dbb = new DatabaseBuilder(this.mdbFile.toFile()).setAutoSync(false).setReadOnly(true);
+		Database db = null;
+		FileChannel channel = null;
+		try {
+			if (this.inMemory) {
+				long t0 = System.currentTimeMillis();
+				channel = MemFileChannel.newChannel(this.mdbFile.toFile(), "r");
+				dbb.setChannel(channel);
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("Loaded " + channel.size() + " bytes in memory in "
+							+ (System.currentTimeMillis() - t0) + " ms.");
+				}
+			}
+			db = dbb.open();
+			Table productTable = db.getTable(properties.getAccessTableName());
+			Table supplementsTable = db.getTable("Supplements");
+			Index supIdIndex = productTable.getIndex("SupplementsParts");
+			Index holderIdIndex = supplementsTable.getIndex("HoldersSupplements");
+
+			List<String> supColumns = getColumnNames(supIdIndex);
+			Map<Object, String> manufacturers = loadManufacturers(supIdIndex.getReferencedIndex(), holderIdIndex);
+			Set<String> productColumns = new HashSet<>(supColumns);
+			productColumns.add(properties.getAccessTableColumnDescription());
+			productColumns.add(properties.getAccessTableColumnPN());
+			productColumns.add(ALTERNATE_PN_COLUMN);
+			productColumns.add(properties.getAccessTableColumnUOM());
+			Iterable<Row> productRows = CursorBuilder.createCursor(productTable).newIterable()
+					.setColumnNames(productColumns);
+			Database openedDb = db;
+			FileChannel openedChannel = channel;
+			return StreamSupport.stream(productRows.spliterator(), false)
+					.map(productRow -> toProduct(productRow, manufacturers.get(getKey(productRow, supColumns)),
+							properties))
+					.onClose(() -> close(openedDb, openedChannel));
+		} catch (IOException ioe) {
+			LOGGER.error("Exception in the Access DB opening / querying.", ioe);
+			close(db, channel);
+			return Stream.empty();
+		}
+	}
+
+	/**
+	 * @param aProductRow
+	 *            a row of the product table.
+	 * @param aManufacturer
+	 *            the name of the holder of the supplement of the product,
+	 *            <code>null</code> if none.
+	 * @param someProperties
+	 *            the properties naming the columns.
+	 * @return the product described by the row.
+	 */
+	private Product toProduct(Row aProductRow, String aManufacturer, ConnectionProperties someProperties) {
+		String manufacturer, description, pn, alternatePN, uom;
+		manufacturer = "";
+		if (aManufacturer != null) {
+			manufacturer = aManufacturer;
+		}
+		description = aProductRow.getString(someProperties.getAccessTableColumnDescription());
+		pn = aProductRow.getString(someProperties.getAccessTableColumnPN());
+		alternatePN = aProductRow.getString(ALTERNATE_PN_COLUMN);
+		uom = aProductRow.getString(someProperties.getAccessTableColumnUOM());
+		if (StringUtils.isEmpty(uom)) {
+			uom = someProperties.getAccessTableColumnUOM();
+		}
+
+		Product current = new Product();
+		current.setDescription(description);
+		current.setManufacturer(manufacturer);
+		current.setNote("");
+		current.setPartNumber(pn);
+		current.setUnitOfMeasure(uom);
+		current.setAlternatePartNumber(alternatePN);
+		return current;
+	}
+}
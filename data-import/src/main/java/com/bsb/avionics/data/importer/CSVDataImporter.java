@@ -0,0 +1,563 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * Data importer for CSV and TSV file kinds (UTF-8, first row of titles,
+ * fields optionally quoted with <code>"</code>). The file is memory-mapped by
+ * chunks cut at record boundaries; when all the products are collected at
+ * once ({@link #collect(Collector)}), the chunks are parsed in parallel by the
+ * fork-join pool, then handed in order to the collector. The columns are mapped
+ * like the XLSX ones (see {@link XLSXColumnMapper}) and only the mapped columns
+ * are decoded to strings.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class CSVDataImporter extends DataImporter {
+
+	/**
+	 * <p>
+	 * Reader of the file by chunks of whole records, each chunk being a
+	 * mapping of the file. The title row is read when the reader is opened.
+	 * </p>
+	 */
+	private static class ChunkReader extends Spliterators.AbstractSpliterator<ByteBuffer> implements Closeable {
+
+		/**
+		 * <p>
+		 * The mapped file.
+		 * </p>
+		 */
+		private FileChannel channel;
+
+		/**
+		 * <p>
+		 * The field delimiter.
+		 * </p>
+		 */
+		private byte delimiter;
+
+		/**
+		 * <p>
+		 * The titles of the columns.
+		 * </p>
+		 */
+		private String[] header;
+
+		/**
+		 * <p>
+		 * The rest of the first chunk, past the title row, <code>null</code>
+		 * once read.
+		 * </p>
+		 */
+		private ByteBuffer pending;
+
+		/**
+		 * <p>
+		 * The offset of the next chunk in the file.
+		 * </p>
+		 */
+		private long position;
+
+		/**
+		 * <p>
+		 * The size of the file.
+		 * </p>
+		 */
+		private long size;
+
+		/**
+		 * <p>
+		 * Default constructor: open the file and read its title row.
+		 * </p>
+		 * 
+		 * @param aFile
+		 *            the file to read.
+		 * @param aDelimiter
+		 *            the field delimiter.
+		 * @throws IOException
+		 *             if the file cannot be read.
+		 */
+		ChunkReader(Path aFile, byte aDelimiter) throws IOException {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			delimiter = aDelimiter;
+			channel = FileChannel.open(aFile, StandardOpenOption.READ);
+			try {
+				size = channel.size();
+				pending = readChunk();
+				header = new String[0];
+				if (pending != null) {
+					if (pending.remaining() >= UTF8_BOM.length && pending.get(0) == UTF8_BOM[0]
+							&& pending.get(1) == UTF8_BOM[1] && pending.get(2) == UTF8_BOM[2]) {
+						pending.position(UTF8_BOM.length);
+					}
+					String[] titles = new String[HEADER_COLUMN_COUNT];
+					boolean[] all = new boolean[HEADER_COLUMN_COUNT];
+					Arrays.fill(all, true);
+					if (new RecordParser(pending, delimiter).nextRecord(titles, all)) {
+						header = titles;
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+		/**
+		 * @return the titles of the columns (empty for an empty file).
+		 */
+		String[] getHeader() {
+			return header;
+		}
+
+		/**
+		 * @return the next chunk of records, <code>null</code> once the file is
+		 *         fully read.
+		 * @throws IOException
+		 *             if the file cannot be mapped.
+		 */
+		ByteBuffer nextChunk() throws IOException {
+			ByteBuffer chunk = pending;
+			if (chunk != null) {
+				pending = null;
+				return chunk;
+			}
+			return readChunk();
+		}
+
+		/**
+		 * <p>
+		 * Map the next chunk of the file: {@link #CHUNK_SIZE} bytes cut after
+		 * the last record they contain, or more if a single record is longer.
+		 * </p>
+		 * 
+		 * @return the mapped chunk, <code>null</code> at the end of the file.
+		 * @throws IOException
+		 *             if the file cannot be mapped.
+		 */
+		private ByteBuffer readChunk() throws IOException {
+			if (position >= size) {
+				return null;
+			}
+			long length = Math.min(CHUNK_SIZE, size - position);
+			while (true) {
+				MappedByteBuffer window = channel.map(MapMode.READ_ONLY, position, length);
+				int end = position + length == size ? (int) length : findRecordEnd(window, delimiter);
+				if (end > 0) {
+					window.limit(end);
+					position += end;
+					return window;
+				}
+				if (length >= Integer.MAX_VALUE) {
+					throw new IOException("Record longer than " + Integer.MAX_VALUE + " bytes at offset " + position);
+				}
+				length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - position);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean tryAdvance(Consumer<? super ByteBuffer> anAction) {
+			ByteBuffer chunk;
+			try {
+				chunk = nextChunk();
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+			if (chunk == null) {
+				return false;
+			}
+			anAction.accept(chunk);
+			return true;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Parser of the records of a chunk, decoding only the requested fields.
+	 * </p>
+	 */
+	private static class RecordParser {
+
+		/**
+		 * <p>
+		 * The chunk, positioned on the next record.
+		 * </p>
+		 */
+		private ByteBuffer chunk;
+
+		/**
+		 * <p>
+		 * The field delimiter.
+		 * </p>
+		 */
+		private byte delimiter;
+
+		/**
+		 * <p>
+		 * The bytes of the current field (unquoted).
+		 * </p>
+		 */
+		private byte[] field = new byte[256];
+
+		/**
+		 * <p>
+		 * Default constructor.
+		 * </p>
+		 * 
+		 * @param aChunk
+		 *            the chunk, positioned on its first record.
+		 * @param aDelimiter
+		 *            the field delimiter.
+		 */
+		RecordParser(ByteBuffer aChunk, byte aDelimiter) {
+			chunk = aChunk;
+			delimiter = aDelimiter;
+		}
+
+		/**
+		 * <p>
+		 * Read the next record, the blank lines being skipped.
+		 * </p>
+		 * 
+		 * @param aRow
+		 *            the text of the fields, by column (<code>null</code> for
+		 *            the fields not requested or missing).
+		 * @param someUsed
+		 *            the columns to decode.
+		 * @return <code>false</code> once the chunk is fully read.
+		 */
+		boolean nextRecord(String[] aRow, boolean[] someUsed) {
+			Arrays.fill(aRow, null);
+			while (chunk.hasRemaining() && (chunk.get(chunk.position()) == '\n' || chunk.get(chunk.position()) == '\r')) {
+				chunk.get();
+			}
+			if (!chunk.hasRemaining()) {
+				return false;
+			}
+			for (int column = 0;; column++) {
+				boolean used = column < aRow.length && someUsed[column];
+				int length = readField(used);
+				if (used) {
+					aRow[column] = new String(field, 0, length, StandardCharsets.UTF_8);
+				}
+				if (!chunk.hasRemaining() || chunk.get() != delimiter) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * <p>
+		 * Read a field, up to the next delimiter or end of line.
+		 * </p>
+		 * 
+		 * @param aUsed
+		 *            <code>true</code> to copy its bytes into {@link #field},
+		 *            <code>false</code> to skip it.
+		 * @return the number of bytes of the field (0 if skipped).
+		 */
+		private int readField(boolean aUsed) {
+			int length = 0;
+			boolean quoted = chunk.hasRemaining() && chunk.get(chunk.position()) == '"';
+			if (quoted) {
+				chunk.get();
+			}
+			while (chunk.hasRemaining()) {
+				byte b = chunk.get(chunk.position());
+				if (quoted) {
+					chunk.get();
+					if (b == '"') {
+						if (chunk.hasRemaining() && chunk.get(chunk.position()) == '"') {
+							// Escaped quote.
+							chunk.get();
+						} else {
+							quoted = false;
+							continue;
+						}
+					}
+				} else if (b == delimiter || b == '\n') {
+					break;
+				} else {
+					chunk.get();
+					if (b == '\r') {
+						continue;
+					}
+				}
+				if (aUsed) {
+					if (length == field.length) {
+						field = Arrays.copyOf(field, length * 2);
+					}
+					field[length++] = b;
+				}
+			}
+			return length;
+		}
+	}
+
+	/**
+	 * <p>
+	 * The size of the chunks mapped and parsed at once.
+	 * </p>
+	 */
+	private static final int CHUNK_SIZE = 8 << 20;
+
+	/**
+	 * <p>
+	 * The maximum number of columns read in the title row.
+	 * </p>
+	 */
+	private static final int HEADER_COLUMN_COUNT = 1024;
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(CSVDataImporter.class);
+
+	/**
+	 * <p>
+	 * The byte order mark some tools write at the start of UTF-8 files.
+	 * </p>
+	 */
+	private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+	/**
+	 * <p>
+	 * Find the end of the last whole record of a window of the file, the
+	 * window starting on a record. A field is quoted only when it starts with
+	 * <code>"</code>, the same way as {@link RecordParser} reads it.
+	 * </p>
+	 * 
+	 * @param aWindow
+	 *            the window.
+	 * @param aDelimiter
+	 *            the field delimiter.
+	 * @return the index following the end of line of the last whole record, 0
+	 *         if the window does not contain one.
+	 */
+	static int findRecordEnd(ByteBuffer aWindow, byte aDelimiter) {
+		int end = 0;
+		boolean quoted = false;
+		boolean fieldStart = true;
+		int limit = aWindow.limit();
+		for (int i = 0; i < limit; i++) {
+			byte b = aWindow.get(i);
+			if (quoted) {
+				if (b == '"') {
+					if (i + 1 < limit && aWindow.get(i + 1) == '"') {
+						i++;
+					} else {
+						quoted = false;
+					}
+				}
+			} else if (fieldStart && b == '"') {
+				quoted = true;
+				fieldStart = false;
+			} else if (b == '\n') {
+				end = i + 1;
+				fieldStart = true;
+			} else {
+				fieldStart = b == aDelimiter;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * <p>
+	 * The CSV/TSV file currently imported.
+	 * </p>
+	 */
+	private Path csvFile;
+
+	/**
+	 * <p>
+	 * The field delimiter.
+	 * </p>
+	 */
+	private byte delimiter;
+
+	/**
+	 * <p>
+	 * The mapper of the rows, compiled from the title row of the file.
+	 * </p>
+	 */
+	private XLSXColumnMapper mapper;
+
+	/**
+	 * <p>
+	 * The columns to decode (the mapped ones).
+	 * </p>
+	 */
+	private boolean[] usedColumns;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the CSV/TSV file to import in the system.
+	 * @param aDelimiter
+	 *            the field delimiter (<code>,</code> for CSV,
+	 *            <code>\t</code> for TSV).
+	 */
+	public CSVDataImporter(final Path aFile, final char aDelimiter) {
+		super();
+		csvFile = aFile;
+		delimiter = (byte) aDelimiter;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <A, R> R collect(Collector<? super Product, A, R> aCollector) {
+		long t0 = System.currentTimeMillis();
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		A container = aCollector.supplier().get();
+		BiConsumer<A, ? super Product> accumulator = aCollector.accumulator();
+		// Bound the mapped chunks waiting for a worker.
+		int maxPendingTasks = pool.getParallelism() * 4;
+		Deque<ForkJoinTask<List<Product>>> tasks = new ArrayDeque<>();
+		int chunkCount = 0;
+		ChunkReader file;
+		try {
+			file = openFile();
+		} catch (IOException ioe) {
+			LOGGER.error("Exception while reading the CSV file.", ioe);
+			return aCollector.finisher().apply(container);
+		}
+		try (ChunkReader reader = file) {
+			ByteBuffer chunk;
+			while ((chunk = reader.nextChunk()) != null) {
+				ByteBuffer records = chunk;
+				tasks.add(pool.submit(() -> parse(records)));
+				chunkCount++;
+				while (tasks.size() > maxPendingTasks) {
+					tasks.poll().join().forEach(product -> accumulator.accept(container, product));
+				}
+			}
+			while (!tasks.isEmpty()) {
+				tasks.poll().join().forEach(product -> accumulator.accept(container, product));
+			}
+		} catch (IOException ioe) {
+			// A partial result would be imported as if it were the whole file.
+			for (ForkJoinTask<List<Product>> task : tasks) {
+				task.cancel(false);
+			}
+			throw new UncheckedIOException(ioe);
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Retrieved " + chunkCount + " chunks in "
+					+ (System.currentTimeMillis() - t0) + " ms.");
+		}
+		return aCollector.finisher().apply(container);
+	}
+
+	/**
+	 * <p>
+	 * Open the file and compile the {@link #mapper} from its title row.
+	 * </p>
+	 * 
+	 * @return a reader of the file, past the title row.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	private ChunkReader openFile() throws IOException {
+		ChunkReader reader = new ChunkReader(csvFile, delimiter);
+		mapper = XLSXColumnMapper.compile(reader.getHeader());
+		usedColumns = new boolean[mapper.getColumnCount()];
+		for (int column = 0; column < usedColumns.length; column++) {
+			usedColumns[column] = mapper.isMapped(column);
+		}
+		return reader;
+	}
+
+	/**
+	 * <p>
+	 * Parse the records of a chunk.
+	 * </p>
+	 * 
+	 * @param aChunk
+	 *            the chunk.
+	 * @return the products of the chunk, in the file order.
+	 */
+	private List<Product> parse(ByteBuffer aChunk) {
+		List<Product> products = new ArrayList<>();
+		RecordParser parser = new RecordParser(aChunk, delimiter);
+		String[] row = new String[usedColumns.length];
+		while (parser.nextRecord(row, usedColumns)) {
+			products.add(mapper.map(row));
+		}
+		return products;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Stream<Product> stream() {
+		ChunkReader reader;
+		try {
+			reader = openFile();
+		} catch (IOException ioe) {
+			LOGGER.error("Exception while reading the CSV file.", ioe);
+			return Stream.empty();
+		}
+		return StreamSupport.stream(reader, false).flatMap(chunk -> parse(chunk).stream()).onClose(() -> {
+			try {
+				reader.close();
+			} catch (IOException ioe) {
+				LOGGER.error("Exception while closing the CSV file.", ioe);
+			}
+		});
+	}
+}
@@ -1,45 +1,65 @@
-/**
- * 
- */
-package com.bsb.avionics.data.importer;
-
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-
-import com.bsb.avionics.model.Product;
-
-/**
- * @author Marc PEZZETTI
- *
- */
-public abstract class DataImporter {
-
-	/**
-	 * 
-	 */
-	protected Map<String, Set<Product>> productsByPN;
-
-	/**
-	 * <p>
-	 * Default constructor.
-	 * </p>
-	 */
-	public DataImporter() {
-		productsByPN = new HashMap<>();
-	}
-
-	/**
-	 * @return the map containing the products by their Part Numbers.
-	 */
-	public final Map<String, Set<Product>> getProductsByPN() {
-		return productsByPN;
-	}
-
-	/**
-	 * <p>
-	 * Retrieve data from the data source.
-	 * </p>
-	 */
-	public abstract void retrieveData();
-}
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+import com.bsb.avionics.model.Product;
+import com.bsb.avionics.model.ProductStore;
+
+/**
+ * <p>
+ * Data source of the products. The products are pulled one by one from
+ * {@link #stream()}, so that a consumer can handle the whole source in
+ * constant memory, or reduced at once by {@link #collect(Collector)} (e.g.
+ * grouped by Part Number with {@link ProductStore#toProductStore()}).
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public abstract class DataImporter {
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 */
+	public DataImporter() {
+	}
+
+	/**
+	 * <p>
+	 * Read the whole data source and reduce its products with the given
+	 * collector, in their order in the source. The importers may parse the
+	 * source in parallel.
+	 * </p>
+	 * 
+	 * @param <A>
+	 *            the type of the accumulation of the collector.
+	 * @param <R>
+	 *            the type of the result of the collector.
+	 * @param aCollector
+	 *            the collector of the products.
+	 * @return the result of the collector.
+	 */
+	public <A, R> R collect(Collector<? super Product, A, R> aCollector) {
+		try (Stream<Product> products = stream()) {
+			return products.collect(aCollector);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Open the data source and stream its products: every product is read from
+	 * the source when the stream pulls it. The stream must be closed to release
+	 * the source (e.g. in a try-with-resources block).
+	 * </p>
+	 * 
+	 * @return the sequential stream of the products, empty if the source cannot
+	 *         be opened.
+	 */
+	public abstract Stream<Product> stream();
+}
@@ -0,0 +1,311 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * Sorter of the products by Part Number within a memory budget, for the data
+ * sources larger than the heap. The products are buffered up to a threshold;
+ * each full buffer is sorted and spilled to a temporary product file (see
+ * {@link ProductFileWriter}) as a sorted run. {@link #sortedStream()} then
+ * merges the runs (k-way merge), grouping the products by PN and keeping the
+ * identical products once.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class ExternalProductSorter implements Closeable {
+
+	/**
+	 * <p>
+	 * Cursor on the next product of a sorted run.
+	 * </p>
+	 */
+	private static class RunCursor {
+
+		/**
+		 * <p>
+		 * The next product of the run.
+		 * </p>
+		 */
+		private Product head;
+
+		/**
+		 * <p>
+		 * The products of the run, after {@link #head}.
+		 * </p>
+		 */
+		private Iterator<Product> products;
+
+		/**
+		 * <p>
+		 * Default constructor.
+		 * </p>
+		 * 
+		 * @param someProducts
+		 *            the products of the run.
+		 */
+		RunCursor(Iterator<Product> someProducts) {
+			products = someProducts;
+		}
+
+		/**
+		 * @return <code>true</code> if the run has a next product, then held by
+		 *         {@link #head}.
+		 */
+		boolean advance() {
+			head = products.hasNext() ? products.next() : null;
+			return head != null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(ExternalProductSorter.class);
+
+	/**
+	 * <p>
+	 * The order of the products: by PN, then by all their fields, so that the
+	 * identical products are next to each other.
+	 * </p>
+	 */
+	private static final Comparator<Product> PRODUCT_ORDER = createOrder();
+
+	/**
+	 * @return the order of the products.
+	 */
+	private static Comparator<Product> createOrder() {
+		Comparator<String> nullsFirst = Comparator.nullsFirst(Comparator.naturalOrder());
+		return Comparator.comparing(Product::getPartNumber, nullsFirst)
+				.thenComparing(Product::getDescription, nullsFirst).thenComparing(Product::getManufacturer, nullsFirst)
+				.thenComparing(Product::getUnitOfMeasure, nullsFirst).thenComparing(Product::getNote, nullsFirst)
+				.thenComparing(Product::getAlternatePartNumber, nullsFirst);
+	}
+
+	/**
+	 * <p>
+	 * The products not spilled yet.
+	 * </p>
+	 */
+	private List<Product> buffer = new ArrayList<>();
+
+	/**
+	 * <p>
+	 * The streams of the runs being merged.
+	 * </p>
+	 */
+	private List<Stream<Product>> runStreams = new ArrayList<>();
+
+	/**
+	 * <p>
+	 * The sorted runs spilled so far.
+	 * </p>
+	 */
+	private List<Path> runs = new ArrayList<>();
+
+	/**
+	 * <p>
+	 * The number of products buffered before a run is spilled.
+	 * </p>
+	 */
+	private int threshold;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aThreshold
+	 *            the number of products buffered before a sorted run is
+	 *            spilled to disk.
+	 */
+	public ExternalProductSorter(int aThreshold) {
+		threshold = Math.max(1, aThreshold);
+	}
+
+	/**
+	 * <p>
+	 * Add a product, spilling the buffer as a sorted run once it reaches the
+	 * threshold.
+	 * </p>
+	 * 
+	 * @param aProduct
+	 *            the product.
+	 * @throws IOException
+	 *             if the run cannot be written.
+	 */
+	public void add(Product aProduct) throws IOException {
+		buffer.add(aProduct);
+		if (buffer.size() >= threshold) {
+			spill();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The runs are closed and deleted.
+	 * </p>
+	 */
+	@Override
+	public void close() throws IOException {
+		buffer = new ArrayList<>();
+		for (Stream<Product> runStream : runStreams) {
+			runStream.close();
+		}
+		runStreams.clear();
+		IOException failure = null;
+		for (Path run : runs) {
+			try {
+				Files.deleteIfExists(run);
+			} catch (IOException ioe) {
+				failure = ioe;
+			}
+		}
+		runs.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * @return the number of sorted runs spilled to disk.
+	 */
+	public int getRunCount() {
+		return runs.size();
+	}
+
+	/**
+	 * <p>
+	 * Sort the buffer and drop its duplicates.
+	 * </p>
+	 */
+	private void sortBuffer() {
+		buffer.sort(PRODUCT_ORDER);
+		List<Product> sorted = new ArrayList<>(buffer.size());
+		for (Product product : buffer) {
+			if (sorted.isEmpty() || !product.equals(sorted.get(sorted.size() - 1))) {
+				sorted.add(product);
+			}
+		}
+		buffer = sorted;
+	}
+
+	/**
+	 * @return the products added, sorted by PN without duplicates. Once all the
+	 *         runs are spilled, they are merged while the stream is pulled; it
+	 *         must be closed to delete them.
+	 * @throws IOException
+	 *             if the last run cannot be written or a run cannot be read.
+	 */
+	public Stream<Product> sortedStream() throws IOException {
+		if (runs.isEmpty()) {
+			sortBuffer();
+			List<Product> sorted = buffer;
+			buffer = new ArrayList<>();
+			return sorted.stream();
+		}
+		if (!buffer.isEmpty()) {
+			spill();
+		}
+		PriorityQueue<RunCursor> cursors = new PriorityQueue<>(runs.size(),
+				(cursor, otherCursor) -> PRODUCT_ORDER.compare(cursor.head, otherCursor.head));
+		for (Path run : runs) {
+			Stream<Product> runStream = ProductFileImporter.open(run);
+			runStreams.add(runStream);
+			RunCursor cursor = new RunCursor(runStream.iterator());
+			if (cursor.advance()) {
+				cursors.add(cursor);
+			}
+		}
+		Iterator<Product> merged = new Iterator<Product>() {
+
+			private Product last;
+
+			@Override
+			public boolean hasNext() {
+				// Skip the products identical to the last one (from other runs).
+				while (!cursors.isEmpty() && cursors.peek().head.equals(last)) {
+					RunCursor cursor = cursors.poll();
+					if (cursor.advance()) {
+						cursors.add(cursor);
+					}
+				}
+				return !cursors.isEmpty();
+			}
+
+			@Override
+			public Product next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				RunCursor cursor = cursors.poll();
+				last = cursor.head;
+				if (cursor.advance()) {
+					cursors.add(cursor);
+				}
+				return last;
+			}
+		};
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> {
+					try {
+						close();
+					} catch (IOException ioe) {
+						LOGGER.error("Exception while deleting the sorted runs.", ioe);
+					}
+				});
+	}
+
+	/**
+	 * <p>
+	 * Write the buffer as a sorted run.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             if the run cannot be written.
+	 */
+	private void spill() throws IOException {
+		long t0 = System.currentTimeMillis();
+		sortBuffer();
+		Path run = Files.createTempFile("products", ".run");
+		runs.add(run);
+		try (ProductFileWriter writer = new ProductFileWriter(run, false)) {
+			for (Product product : buffer) {
+				writer.write(product);
+			}
+			writer.finish();
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Spilled run #" + runs.size() + " (" + buffer.size() + " products) in "
+					+ (System.currentTimeMillis() - t0) + " ms.");
+		}
+		buffer = new ArrayList<>();
+	}
+}
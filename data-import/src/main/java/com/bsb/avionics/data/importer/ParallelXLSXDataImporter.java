@@ -0,0 +1,267 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * Data importer for XLSX file kind, reading the sheet with
+ * {@link XLSXSheetReader} (StAX) instead of the POI usermodel. The sheet is a
+ * single deflated XML document, so it is always parsed sequentially, by the
+ * calling thread. When all the products are collected at once
+ * ({@link #collect(Collector)}), the parsed rows are handed by chunks to the
+ * fork-join pool, which maps them to products (see {@link XLSXColumnMapper})
+ * while the next rows are parsed; the mapped chunks are then handed in order
+ * to the collector.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class ParallelXLSXDataImporter extends DataImporter {
+
+	/**
+	 * <p>
+	 * Spliterator reading the rows of the sheet on demand.
+	 * </p>
+	 */
+	private static class RowSpliterator extends Spliterators.AbstractSpliterator<Product> {
+
+		/**
+		 * <p>
+		 * The mapper of the rows.
+		 * </p>
+		 */
+		private XLSXColumnMapper mapper;
+
+		/**
+		 * <p>
+		 * The reader of the sheet, past the title row.
+		 * </p>
+		 */
+		private XLSXSheetReader reader;
+
+		/**
+		 * <p>
+		 * Default constructor.
+		 * </p>
+		 * 
+		 * @param aReader
+		 *            the reader of the sheet, past the title row.
+		 * @param aMapper
+		 *            the mapper of the rows.
+		 */
+		RowSpliterator(XLSXSheetReader aReader, XLSXColumnMapper aMapper) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			reader = aReader;
+			mapper = aMapper;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean tryAdvance(Consumer<? super Product> anAction) {
+			String[] row;
+			try {
+				row = reader.nextRow();
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+			if (row == null) {
+				return false;
+			}
+			anAction.accept(mapper.map(row));
+			return true;
+		}
+	}
+
+	/**
+	 * <p>
+	 * The number of rows mapped per fork-join task.
+	 * </p>
+	 */
+	private static final int CHUNK_SIZE = 2048;
+
+	/**
+	 * <p>
+	 * The maximum number of columns read in the header row.
+	 * </p>
+	 */
+	private static final int HEADER_COLUMN_COUNT = 1024;
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(ParallelXLSXDataImporter.class);
+
+	/**
+	 * <p>
+	 * Map the rows of a chunk.
+	 * </p>
+	 * 
+	 * @param aMapper
+	 *            the mapper of the rows.
+	 * @param someRows
+	 *            the rows of the chunk.
+	 * @return the products of the chunk, in the sheet order.
+	 */
+	private static List<Product> map(XLSXColumnMapper aMapper, List<String[]> someRows) {
+		List<Product> products = new ArrayList<>(someRows.size());
+		for (String[] row : someRows) {
+			products.add(aMapper.map(row));
+		}
+		return products;
+	}
+
+	/**
+	 * <p>
+	 * The mapper of the rows, compiled from the header row of the sheet.
+	 * </p>
+	 */
+	private XLSXColumnMapper mapper;
+
+	/**
+	 * <p>
+	 * The XLSX file currently imported.
+	 * </p>
+	 */
+	private Path xlsxFile;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the XLSX file to import in the system.
+	 */
+	public ParallelXLSXDataImporter(final Path aFile) {
+		super();
+		xlsxFile = aFile;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <A, R> R collect(Collector<? super Product, A, R> aCollector) {
+		long t0 = System.currentTimeMillis();
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		A container = aCollector.supplier().get();
+		BiConsumer<A, ? super Product> accumulator = aCollector.accumulator();
+		// Bound the parsed rows waiting for a worker.
+		int maxPendingTasks = pool.getParallelism() * 4;
+		Deque<ForkJoinTask<List<Product>>> tasks = new ArrayDeque<>();
+		int rowCount = 0;
+		XLSXSheetReader sheet;
+		try {
+			sheet = openSheet();
+		} catch (IOException ioe) {
+			LOGGER.error("Exception while reading the XLSX file.", ioe);
+			return aCollector.finisher().apply(container);
+		}
+		XLSXColumnMapper rowMapper = mapper;
+		try (XLSXSheetReader reader = sheet) {
+			List<String[]> chunk = new ArrayList<>(CHUNK_SIZE);
+			String[] row;
+			do {
+				row = reader.nextRow();
+				if (row != null) {
+					chunk.add(row);
+					rowCount++;
+				}
+				if (chunk.size() == CHUNK_SIZE || row == null && !chunk.isEmpty()) {
+					List<String[]> rows = chunk;
+					tasks.add(pool.submit(() -> map(rowMapper, rows)));
+					chunk = new ArrayList<>(CHUNK_SIZE);
+					while (tasks.size() > maxPendingTasks) {
+						tasks.poll().join().forEach(product -> accumulator.accept(container, product));
+					}
+				}
+			} while (row != null);
+			while (!tasks.isEmpty()) {
+				tasks.poll().join().forEach(product -> accumulator.accept(container, product));
+			}
+		} catch (IOException ioe) {
+			// A partial result would be imported as if it were the whole sheet.
+			for (ForkJoinTask<List<Product>> task : tasks) {
+				task.cancel(false);
+			}
+			throw new UncheckedIOException(ioe);
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Retrieved " + rowCount + " rows in "
+					+ (System.currentTimeMillis() - t0) + " ms.");
+		}
+		return aCollector.finisher().apply(container);
+	}
+
+	/**
+	 * <p>
+	 * Open the sheet and compile the {@link #mapper} from its header row.
+	 * </p>
+	 * 
+	 * @return a reader of the sheet, past the header row.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	private XLSXSheetReader openSheet() throws IOException {
+		XLSXSheetReader reader = new XLSXSheetReader(xlsxFile, HEADER_COLUMN_COUNT);
+		try {
+			// The first row contains the row's titles.
+			String[] header = reader.nextRow();
+			mapper = XLSXColumnMapper.compile(header == null ? new String[0] : header);
+			reader.setColumnCount(mapper.getColumnCount());
+		} catch (IOException ioe) {
+			reader.close();
+			throw ioe;
+		}
+		return reader;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Stream<Product> stream() {
+		XLSXSheetReader reader;
+		try {
+			reader = openSheet();
+		} catch (IOException ioe) {
+			LOGGER.error("Exception while reading the XLSX file.", ioe);
+			return Stream.empty();
+		}
+		return StreamSupport.stream(new RowSpliterator(reader, mapper), false).onClose(() -> {
+			try {
+				reader.close();
+			} catch (IOException ioe) {
+				LOGGER.error("Exception while closing the XLSX file.", ioe);
+			}
+		});
+	}
+}
@@ -0,0 +1,337 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * Data importer replaying a product file written by {@link ProductFileWriter}
+ * (see there for the format): the products are decoded block by block, with
+ * no parsing of the original file.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class ProductFileImporter extends DataImporter {
+
+	/**
+	 * <p>
+	 * Spliterator decoding the products of the file on demand.
+	 * </p>
+	 */
+	private static class ProductFileReader extends Spliterators.AbstractSpliterator<Product> implements Closeable {
+
+		/**
+		 * <p>
+		 * The raw bytes of the current block.
+		 * </p>
+		 */
+		private byte[] block = new byte[ProductFileWriter.BLOCK_SIZE + 4096];
+
+		/**
+		 * <p>
+		 * The number of bytes of the current block.
+		 * </p>
+		 */
+		private int blockLength;
+
+		/**
+		 * <p>
+		 * The number of products decoded.
+		 * </p>
+		 */
+		private long count;
+
+		/**
+		 * <p>
+		 * The decompressor of the blocks, <code>null</code> if they are stored
+		 * as is.
+		 * </p>
+		 */
+		private Inflater inflater;
+
+		/**
+		 * <p>
+		 * The input of the file.
+		 * </p>
+		 */
+		private DataInputStream input;
+
+		/**
+		 * <p>
+		 * The dictionary of the manufacturers.
+		 * </p>
+		 */
+		private List<String> manufacturers = new ArrayList<>();
+
+		/**
+		 * <p>
+		 * The position of the next product in the current block.
+		 * </p>
+		 */
+		private int position;
+
+		/**
+		 * <p>
+		 * The stored (deflated) bytes of the current block.
+		 * </p>
+		 */
+		private byte[] stored;
+
+		/**
+		 * <p>
+		 * The dictionary of the UOMs.
+		 * </p>
+		 */
+		private List<String> units = new ArrayList<>();
+
+		/**
+		 * <p>
+		 * Default constructor: open the file and check its header.
+		 * </p>
+		 * 
+		 * @param aFile
+		 *            the product file.
+		 * @throws IOException
+		 *             if the file cannot be read or is not a product file.
+		 */
+		ProductFileReader(Path aFile) throws IOException {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			input = new DataInputStream(new BufferedInputStream(Files.newInputStream(aFile), 1 << 16));
+			try {
+				if (input.readInt() != ProductFileWriter.MAGIC) {
+					throw new IOException("Not a product file: " + aFile);
+				}
+				int version = input.readUnsignedByte();
+				if (version != ProductFileWriter.VERSION) {
+					throw new IOException("Unsupported product file version " + version + ": " + aFile);
+				}
+				if ((input.readUnsignedByte() & ProductFileWriter.FLAG_DEFLATE) != 0) {
+					inflater = new Inflater();
+					stored = new byte[block.length];
+				}
+			} catch (IOException ioe) {
+				input.close();
+				throw ioe;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			if (inflater != null) {
+				inflater.end();
+			}
+			input.close();
+		}
+
+		/**
+		 * @param aDictionary
+		 *            the dictionary of the field.
+		 * @return the next dictionary-encoded string of the block.
+		 */
+		private String getEntry(List<String> aDictionary) {
+			int index = getVarint();
+			if (index == aDictionary.size()) {
+				aDictionary.add(getString());
+			}
+			return aDictionary.get(index);
+		}
+
+		/**
+		 * @return the next length-prefixed string of the block.
+		 */
+		private String getString() {
+			int length = getVarint() - 1;
+			if (length < 0) {
+				return null;
+			}
+			String string = new String(block, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return string;
+		}
+
+		/**
+		 * @return the next varint of the block.
+		 */
+		private int getVarint() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = block[position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+		/**
+		 * <p>
+		 * Read the next block.
+		 * </p>
+		 * 
+		 * @return <code>false</code> at the end block.
+		 * @throws IOException
+		 *             if the file cannot be read, is truncated or is corrupted.
+		 */
+		private boolean readBlock() throws IOException {
+			int rawLength;
+			try {
+				rawLength = input.readInt();
+				if (rawLength == 0) {
+					long expectedCount = input.readLong();
+					if (expectedCount != count) {
+						throw new IOException("Truncated product file: " + count + " products read, " + expectedCount
+								+ " expected.");
+					}
+					return false;
+				}
+			} catch (EOFException eofe) {
+				throw new IOException("Truncated product file: no end block after " + count + " products.", eofe);
+			}
+			int storedLength = input.readInt();
+			if (rawLength > block.length) {
+				block = new byte[rawLength];
+			}
+			if (inflater == null) {
+				input.readFully(block, 0, rawLength);
+			} else {
+				if (storedLength > stored.length) {
+					stored = new byte[storedLength];
+				}
+				input.readFully(stored, 0, storedLength);
+				inflater.reset();
+				inflater.setInput(stored, 0, storedLength);
+				try {
+					int inflated = 0;
+					while (inflated < rawLength && !inflater.finished()) {
+						inflated += inflater.inflate(block, inflated, rawLength - inflated);
+					}
+					if (inflated != rawLength) {
+						throw new IOException("Corrupted product file block.");
+					}
+				} catch (DataFormatException dfe) {
+					throw new IOException("Corrupted product file block.", dfe);
+				}
+			}
+			blockLength = rawLength;
+			position = 0;
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean tryAdvance(Consumer<? super Product> anAction) {
+			try {
+				if (position == blockLength && !readBlock()) {
+					return false;
+				}
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+			Product current = new Product();
+			current.setPartNumber(getString());
+			current.setDescription(getString());
+			current.setManufacturer(getEntry(manufacturers));
+			current.setUnitOfMeasure(getEntry(units));
+			current.setNote(getString());
+			current.setAlternatePartNumber(getString());
+			count++;
+			anAction.accept(current);
+			return true;
+		}
+	}
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(ProductFileImporter.class);
+
+	/**
+	 * <p>
+	 * Open a product file, unlike {@link #stream()} failing if it cannot be
+	 * read.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the product file.
+	 * @return the products of the file; the stream must be closed.
+	 * @throws IOException
+	 *             if the file cannot be read or is not a product file.
+	 */
+	static Stream<Product> open(Path aFile) throws IOException {
+		ProductFileReader reader = new ProductFileReader(aFile);
+		return StreamSupport.stream(reader, false).onClose(() -> {
+			try {
+				reader.close();
+			} catch (IOException ioe) {
+				LOGGER.error("Exception while closing the product file.", ioe);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * The product file currently imported.
+	 * </p>
+	 */
+	private Path productFile;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the product file to import in the system.
+	 */
+	public ProductFileImporter(final Path aFile) {
+		super();
+		productFile = aFile;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Stream<Product> stream() {
+		try {
+			return open(productFile);
+		} catch (IOException ioe) {
+			LOGGER.error("Exception while reading the product file.", ioe);
+			return Stream.empty();
+		}
+	}
+}
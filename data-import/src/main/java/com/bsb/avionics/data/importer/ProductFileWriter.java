@@ -0,0 +1,370 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import com.bsb.avionics.model.Product;
+
+/**
+ * <p>
+ * Writer of a product file: the compact binary form of the products read by a
+ * {@link DataImporter}, replayed by {@link ProductFileImporter} without parsing
+ * the original file again.
+ * </p>
+ * <p>
+ * The file starts with {@link #MAGIC}, {@link #VERSION} and a flag byte
+ * ({@link #FLAG_DEFLATE}), followed by blocks: the raw length (an
+ * <code>int</code>, 0 for the end block), the stored length (an
+ * <code>int</code>) and the stored bytes, deflated if the flag is set. A block
+ * holds whole products: the PN, the description, the manufacturer, the UOM,
+ * the note and the alternate PN. The strings are written as their UTF-8 length
+ * + 1 (0 for <code>null</code>), as a varint, then their bytes. The
+ * manufacturer and the UOM are dictionary-encoded: their varint index in a
+ * dictionary of the file, the index of a new entry being followed by its
+ * string. The end block is followed by the number of products of the file (a
+ * <code>long</code>), checked by the reader.
+ * </p>
+ * <p>
+ * The products are written to a temporary file, moved to the product file by
+ * {@link #finish()}: a writer closed before (the data source could not be read
+ * to the end) leaves no product file.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class ProductFileWriter implements Closeable {
+
+	/**
+	 * <p>
+	 * The raw size from which a block is written.
+	 * </p>
+	 */
+	static final int BLOCK_SIZE = 256 << 10;
+
+	/**
+	 * <p>
+	 * The flag of the files whose blocks are deflated.
+	 * </p>
+	 */
+	static final int FLAG_DEFLATE = 1;
+
+	/**
+	 * <p>
+	 * The first bytes of a product file.
+	 * </p>
+	 */
+	static final int MAGIC = 0x42534250;
+
+	/**
+	 * <p>
+	 * The version of the format.
+	 * </p>
+	 */
+	static final int VERSION = 2;
+
+	/**
+	 * <p>
+	 * The raw bytes of the current block.
+	 * </p>
+	 */
+	private byte[] block = new byte[BLOCK_SIZE + 4096];
+
+	/**
+	 * <p>
+	 * The number of bytes of the current block.
+	 * </p>
+	 */
+	private int blockLength;
+
+	/**
+	 * <p>
+	 * The number of products written.
+	 * </p>
+	 */
+	private long count;
+
+	/**
+	 * <p>
+	 * The buffer of the deflated blocks.
+	 * </p>
+	 */
+	private byte[] deflated;
+
+	/**
+	 * <p>
+	 * The compressor of the blocks, <code>null</code> if they are stored as
+	 * is.
+	 * </p>
+	 */
+	private Deflater deflater;
+
+	/**
+	 * <p>
+	 * The product file to write.
+	 * </p>
+	 */
+	private Path file;
+
+	/**
+	 * <p>
+	 * Whether the product file is written.
+	 * </p>
+	 */
+	private boolean finished;
+
+	/**
+	 * <p>
+	 * The dictionary of the manufacturers.
+	 * </p>
+	 */
+	private Map<String, Integer> manufacturers = new HashMap<>();
+
+	/**
+	 * <p>
+	 * The output of the file.
+	 * </p>
+	 */
+	private DataOutputStream output;
+
+	/**
+	 * <p>
+	 * The temporary file the products are written to.
+	 * </p>
+	 */
+	private Path temporaryFile;
+
+	/**
+	 * <p>
+	 * The dictionary of the UOMs.
+	 * </p>
+	 */
+	private Map<String, Integer> units = new HashMap<>();
+
+	/**
+	 * <p>
+	 * Default constructor: create the temporary file and write its header.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the product file to write (replaced by {@link #finish()}).
+	 * @param isCompressed
+	 *            <code>true</code> to deflate the blocks.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public ProductFileWriter(Path aFile, boolean isCompressed) throws IOException {
+		file = aFile;
+		temporaryFile = Files.createTempFile(aFile.toAbsolutePath().getParent(), aFile.getFileName().toString(),
+				".tmp");
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16));
+			output.writeInt(MAGIC);
+			output.writeByte(VERSION);
+			output.writeByte(isCompressed ? FLAG_DEFLATE : 0);
+		} catch (IOException ioe) {
+			if (output != null) {
+				output.close();
+			}
+			Files.deleteIfExists(temporaryFile);
+			throw ioe;
+		}
+		if (isCompressed) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			deflated = new byte[block.length];
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the writer is not finished, the temporary file is deleted: no product
+	 * file is written.
+	 * </p>
+	 */
+	@Override
+	public void close() throws IOException {
+		if (deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+		try {
+			output.close();
+		} finally {
+			if (!finished) {
+				Files.deleteIfExists(temporaryFile);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Write the last block, the end block and the number of products, then move
+	 * the temporary file to the product file (replaced if it exists).
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public void finish() throws IOException {
+		writeBlock();
+		output.writeInt(0);
+		output.writeLong(count);
+		output.close();
+		Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		finished = true;
+	}
+
+	/**
+	 * @return the number of products written.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * <p>
+	 * Append a byte to the current block.
+	 * </p>
+	 * 
+	 * @param aByte
+	 *            the byte.
+	 */
+	private void put(int aByte) {
+		if (blockLength == block.length) {
+			block = Arrays.copyOf(block, block.length * 2);
+		}
+		block[blockLength++] = (byte) aByte;
+	}
+
+	/**
+	 * <p>
+	 * Append a dictionary-encoded string to the current block.
+	 * </p>
+	 * 
+	 * @param aDictionary
+	 *            the dictionary of the field.
+	 * @param aString
+	 *            the string, may be <code>null</code>.
+	 */
+	private void putEntry(Map<String, Integer> aDictionary, String aString) {
+		Integer index = aDictionary.get(aString);
+		if (index == null) {
+			index = aDictionary.size();
+			aDictionary.put(aString, index);
+			putVarint(index);
+			putString(aString);
+		} else {
+			putVarint(index);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Append a length-prefixed UTF-8 string to the current block.
+	 * </p>
+	 * 
+	 * @param aString
+	 *            the string, may be <code>null</code>.
+	 */
+	private void putString(String aString) {
+		if (aString == null) {
+			putVarint(0);
+			return;
+		}
+		byte[] utf8 = aString.getBytes(StandardCharsets.UTF_8);
+		putVarint(utf8.length + 1);
+		if (blockLength + utf8.length > block.length) {
+			block = Arrays.copyOf(block, Math.max(block.length * 2, blockLength + utf8.length));
+		}
+		System.arraycopy(utf8, 0, block, blockLength, utf8.length);
+		blockLength += utf8.length;
+	}
+
+	/**
+	 * <p>
+	 * Append a non negative varint (7 bits per byte, low bits first) to the
+	 * current block.
+	 * </p>
+	 * 
+	 * @param aValue
+	 *            the value.
+	 */
+	private void putVarint(int aValue) {
+		int value = aValue;
+		while ((value & ~0x7F) != 0) {
+			put(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		put(value);
+	}
+
+	/**
+	 * <p>
+	 * Append a product to the file.
+	 * </p>
+	 * 
+	 * @param aProduct
+	 *            the product.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public void write(Product aProduct) throws IOException {
+		putString(aProduct.getPartNumber());
+		putString(aProduct.getDescription());
+		putEntry(manufacturers, aProduct.getManufacturer());
+		putEntry(units, aProduct.getUnitOfMeasure());
+		putString(aProduct.getNote());
+		putString(aProduct.getAlternatePartNumber());
+		count++;
+		if (blockLength >= BLOCK_SIZE) {
+			writeBlock();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Write the current block, if not empty.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	private void writeBlock() throws IOException {
+		if (blockLength == 0) {
+			return;
+		}
+		output.writeInt(blockLength);
+		if (deflater == null) {
+			output.writeInt(blockLength);
+			output.write(block, 0, blockLength);
+		} else {
+			deflater.reset();
+			deflater.setInput(block, 0, blockLength);
+			deflater.finish();
+			int deflatedLength = 0;
+			while (!deflater.finished()) {
+				if (deflatedLength == deflated.length) {
+					deflated = Arrays.copyOf(deflated, deflated.length * 2);
+				}
+				deflatedLength += deflater.deflate(deflated, deflatedLength, deflated.length - deflatedLength);
+			}
+			output.writeInt(deflatedLength);
+			output.write(deflated, 0, deflatedLength);
+		}
+		blockLength = 0;
+	}
+}
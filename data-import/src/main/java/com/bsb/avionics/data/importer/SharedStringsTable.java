@@ -0,0 +1,269 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>
+ * Shared strings table of a XLSX file, kept off-heap: the strings are written
+ * as UTF-8 bytes in a temporary file, their offsets in a second one, and both
+ * files are memory-mapped once the table is complete. A lookup reads the
+ * offsets and decodes the bytes straight from the mapped files, so that the
+ * heap used does not depend on the number of strings.
+ * </p>
+ * <p>
+ * The table is filled with {@link #add(String)}, then {@link #complete()} must
+ * be called before the first {@link #get(int)}.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class SharedStringsTable implements Closeable {
+
+	/**
+	 * <p>
+	 * The size of the mapped segments (a single mapping is limited to 2 GB).
+	 * </p>
+	 */
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	/**
+	 * <p>
+	 * Map a whole file, by segments of {@link #SEGMENT_SIZE} bytes.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the file to map.
+	 * @return the mapped segments.
+	 * @throws IOException
+	 *             if the file cannot be mapped.
+	 */
+	private static MappedByteBuffer[] map(Path aFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(aFile, StandardOpenOption.READ)) {
+			long size = channel.size();
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) (size / SEGMENT_SIZE) + 1];
+			for (int i = 0; i < segments.length; i++) {
+				long start = (long) i * SEGMENT_SIZE;
+				segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+			}
+			return segments;
+		}
+	}
+
+	/**
+	 * <p>
+	 * The number of bytes written so far.
+	 * </p>
+	 */
+	private long byteCount;
+
+	/**
+	 * <p>
+	 * The mapped segments of {@link #bytesFile}.
+	 * </p>
+	 */
+	private MappedByteBuffer[] bytes;
+
+	/**
+	 * <p>
+	 * The temporary file of the UTF-8 bytes of the strings.
+	 * </p>
+	 */
+	private Path bytesFile;
+
+	/**
+	 * <p>
+	 * The output of the strings, <code>null</code> once the table is complete.
+	 * </p>
+	 */
+	private DataOutputStream bytesOutput;
+
+	/**
+	 * <p>
+	 * The mapped segments of {@link #offsetsFile}.
+	 * </p>
+	 */
+	private MappedByteBuffer[] offsets;
+
+	/**
+	 * <p>
+	 * The temporary file of the offsets of the strings (one <code>long</code>
+	 * per string, plus the end of the last string).
+	 * </p>
+	 */
+	private Path offsetsFile;
+
+	/**
+	 * <p>
+	 * The output of the offsets, <code>null</code> once the table is complete.
+	 * </p>
+	 */
+	private DataOutputStream offsetsOutput;
+
+	/**
+	 * <p>
+	 * The number of strings.
+	 * </p>
+	 */
+	private int size;
+
+	/**
+	 * <p>
+	 * Default constructor: create the temporary files.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             if the temporary files cannot be created.
+	 */
+	public SharedStringsTable() throws IOException {
+		bytesFile = Files.createTempFile("sst", ".bytes");
+		offsetsFile = Files.createTempFile("sst", ".offsets");
+		bytesOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(bytesFile), 1 << 16));
+		offsetsOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(offsetsFile), 1 << 16));
+	}
+
+	/**
+	 * <p>
+	 * Append a string to the table.
+	 * </p>
+	 * 
+	 * @param aString
+	 *            the string.
+	 * @throws IOException
+	 *             if the string cannot be written.
+	 */
+	public void add(String aString) throws IOException {
+		byte[] utf8 = aString.getBytes(StandardCharsets.UTF_8);
+		offsetsOutput.writeLong(byteCount);
+		bytesOutput.write(utf8);
+		byteCount += utf8.length;
+		size++;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The temporary files are deleted, or on exit if they are still mapped.
+	 * </p>
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			closeOutputs();
+		} finally {
+			bytes = null;
+			offsets = null;
+			delete(bytesFile);
+			delete(offsetsFile);
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 *             if the outputs cannot be closed.
+	 */
+	private void closeOutputs() throws IOException {
+		if (bytesOutput != null) {
+			try {
+				bytesOutput.close();
+			} finally {
+				bytesOutput = null;
+				offsetsOutput.close();
+				offsetsOutput = null;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Flush the table and map it. No string can be added afterwards.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             if the table cannot be written or mapped.
+	 */
+	public void complete() throws IOException {
+		offsetsOutput.writeLong(byteCount);
+		closeOutputs();
+		bytes = map(bytesFile);
+		offsets = map(offsetsFile);
+	}
+
+	/**
+	 * @param aFile
+	 *            the temporary file to delete.
+	 */
+	private void delete(Path aFile) {
+		try {
+			Files.deleteIfExists(aFile);
+		} catch (IOException ioe) {
+			// Still mapped (e.g. on Windows): the mapping is released by the GC.
+			aFile.toFile().deleteOnExit();
+		}
+	}
+
+	/**
+	 * @param anIndex
+	 *            the index of a string.
+	 * @return the string.
+	 */
+	public String get(int anIndex) {
+		if (anIndex < 0 || anIndex >= size) {
+			throw new IndexOutOfBoundsException("Shared string " + anIndex + " of " + size);
+		}
+		long start = getOffset(anIndex);
+		int length = (int) (getOffset(anIndex + 1) - start);
+		MappedByteBuffer segment = bytes[(int) (start / SEGMENT_SIZE)];
+		int position = (int) (start % SEGMENT_SIZE);
+		if (position + length <= segment.limit()) {
+			ByteBuffer utf8 = segment.duplicate();
+			utf8.position(position);
+			utf8.limit(position + length);
+			return StandardCharsets.UTF_8.decode(utf8).toString();
+		}
+		// The string spans two segments.
+		byte[] utf8 = new byte[length];
+		for (int copied = 0; copied < length;) {
+			segment = bytes[(int) ((start + copied) / SEGMENT_SIZE)];
+			position = (int) ((start + copied) % SEGMENT_SIZE);
+			int count = Math.min(length - copied, segment.limit() - position);
+			ByteBuffer part = segment.duplicate();
+			part.position(position);
+			part.get(utf8, copied, count);
+			copied += count;
+		}
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param anIndex
+	 *            the index of a string (or the number of strings).
+	 * @return the offset of the first byte of the string (or the end of the
+	 *         last one).
+	 */
+	private long getOffset(int anIndex) {
+		long position = anIndex * 8L;
+		return offsets[(int) (position / SEGMENT_SIZE)].getLong((int) (position % SEGMENT_SIZE));
+	}
+
+	/**
+	 * @return the number of strings.
+	 */
+	public int size() {
+		return size;
+	}
+}
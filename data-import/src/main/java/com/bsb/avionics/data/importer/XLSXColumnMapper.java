@@ -0,0 +1,212 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+import com.bsb.avionics.utils.ConnectionProperties;
+
+/**
+ * <p>
+ * Column to field mapping of a XLSX sheet (or CSV/TSV file), compiled once
+ * from its header row:
+ * each product field is bound to the column whose title is configured by the
+ * <code>xlsx.column.*</code> keys, or to its default position when no title is
+ * configured. The rows are then mapped by index only.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class XLSXColumnMapper {
+
+	/**
+	 * <p>
+	 * Index of the alternate PN in {@link #columns}.
+	 * </p>
+	 */
+	private static final int ALTERNATE_PN = 5;
+
+	/**
+	 * <p>
+	 * The default position of each field (no default for the alternate PN).
+	 * </p>
+	 */
+	private static final int[] DEFAULT_COLUMNS = { 0, 1, 2, 3, 4, -1 };
+
+	/**
+	 * <p>
+	 * Index of the description in {@link #columns}.
+	 * </p>
+	 */
+	private static final int DESCRIPTION = 1;
+
+	/**
+	 * <p>
+	 * The logger to use for this class.
+	 * </p>
+	 */
+	private static final Logger LOGGER = LogManager.getLogger(XLSXColumnMapper.class);
+
+	/**
+	 * <p>
+	 * Index of the manufacturer in {@link #columns}.
+	 * </p>
+	 */
+	private static final int MANUFACTURER = 2;
+
+	/**
+	 * <p>
+	 * Index of the note in {@link #columns}.
+	 * </p>
+	 */
+	private static final int NOTE = 4;
+
+	/**
+	 * <p>
+	 * Index of the PN in {@link #columns}.
+	 * </p>
+	 */
+	private static final int PN = 0;
+
+	/**
+	 * <p>
+	 * Index of the UOM in {@link #columns}.
+	 * </p>
+	 */
+	private static final int UOM = 3;
+
+	/**
+	 * <p>
+	 * Compile the mapper of a sheet from its header row and the configured
+	 * column titles.
+	 * </p>
+	 * 
+	 * @param aHeader
+	 *            the titles of the columns of the sheet.
+	 * @return the mapper.
+	 */
+	public static XLSXColumnMapper compile(String[] aHeader) {
+		ConnectionProperties properties = ConnectionProperties.getInstance();
+		String[] titles = { properties.getXLSXColumnPN(), properties.getXLSXColumnDescription(),
+				properties.getXLSXColumnManufacturer(), properties.getXLSXColumnUOM(),
+				properties.getXLSXColumnNote(), properties.getXLSXColumnAlternatePN() };
+		int[] columns = Arrays.copyOf(DEFAULT_COLUMNS, DEFAULT_COLUMNS.length);
+		for (int field = 0; field < titles.length; field++) {
+			String title = titles[field] == null ? "" : titles[field].trim();
+			if (!title.isEmpty()) {
+				columns[field] = findColumn(aHeader, title);
+				if (columns[field] < 0) {
+					LOGGER.error("Column '" + title + "' not found in the XLSX header " + Arrays.toString(aHeader)
+							+ ". The field is left empty.");
+				}
+			}
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("XLSX columns (PN, description, manufacturer, UOM, note, alternate PN): "
+					+ Arrays.toString(columns));
+		}
+		return new XLSXColumnMapper(columns);
+	}
+
+	/**
+	 * @param aHeader
+	 *            the titles of the columns of the sheet.
+	 * @param aTitle
+	 *            the title to look for (case insensitive).
+	 * @return the index of the column or -1 if not found.
+	 */
+	private static int findColumn(String[] aHeader, String aTitle) {
+		for (int column = 0; column < aHeader.length; column++) {
+			if (aHeader[column] != null && aTitle.equalsIgnoreCase(aHeader[column].trim())) {
+				return column;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * <p>
+	 * The number of columns to read per row.
+	 * </p>
+	 */
+	private int columnCount;
+
+	/**
+	 * <p>
+	 * The column of each field, -1 if the field is not in the sheet.
+	 * </p>
+	 */
+	private int[] columns;
+
+	/**
+	 * <p>
+	 * Default constructor.
+	 * </p>
+	 * 
+	 * @param someColumns
+	 *            the column of each field, -1 if the field is not in the sheet.
+	 */
+	private XLSXColumnMapper(int[] someColumns) {
+		columns = someColumns;
+		for (int column : columns) {
+			columnCount = Math.max(columnCount, column + 1);
+		}
+	}
+
+	/**
+	 * @param aField
+	 *            the index of a field.
+	 * @param aRow
+	 *            the text of the cells of a row.
+	 * @return the trimmed text of the field, empty if missing.
+	 */
+	private String get(int aField, String[] aRow) {
+		int column = columns[aField];
+		String value = column >= 0 && column < aRow.length ? aRow[column] : null;
+		return value == null ? "" : value.trim();
+	}
+
+	/**
+	 * @return the number of columns to read per row (the last mapped column + 1).
+	 */
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * @param aColumn
+	 *            the index of a column.
+	 * @return <code>true</code> if a field is mapped to the column.
+	 */
+	boolean isMapped(int aColumn) {
+		for (int column : columns) {
+			if (column == aColumn) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param aRow
+	 *            the text of the cells of a row, by column.
+	 * @return the product described by the row.
+	 */
+	public Product map(String[] aRow) {
+		Product current = new Product();
+		current.setPartNumber(get(PN, aRow));
+		current.setDescription(get(DESCRIPTION, aRow));
+		current.setManufacturer(get(MANUFACTURER, aRow));
+		current.setUnitOfMeasure(get(UOM, aRow));
+		current.setNote(get(NOTE, aRow));
+		String alternatePN = get(ALTERNATE_PN, aRow);
+		current.setAlternatePartNumber(alternatePN.isEmpty() ? null : alternatePN);
+		return current;
+	}
+}
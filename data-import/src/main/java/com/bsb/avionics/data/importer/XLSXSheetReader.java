@@ -0,0 +1,357 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * <p>
+ * Lightweight reader of the first sheet of a XLSX file. The sheet XML is
+ * decoded with StAX straight into the text of the cells: no POI object is
+ * built per cell. The shared strings table is loaded when the reader is
+ * opened; the rows are read one by one with {@link #nextRow()}.
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class XLSXSheetReader implements Closeable {
+
+	/**
+	 * <p>
+	 * The factory of the StAX readers (no DTD nor external entity).
+	 * </p>
+	 */
+	private static final XMLInputFactory XML_FACTORY = createFactory();
+
+	/**
+	 * @return the factory of the StAX readers.
+	 */
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return factory;
+	}
+
+	/**
+	 * @param aReference
+	 *            a cell reference (e.g. <code>AB12</code>).
+	 * @return the 0-based column index of the cell.
+	 */
+	static int getColumnIndex(String aReference) {
+		int column = 0;
+		for (int i = 0; i < aReference.length(); i++) {
+			char c = aReference.charAt(i);
+			if (c < 'A' || c > 'Z') {
+				break;
+			}
+			column = column * 26 + c - 'A' + 1;
+		}
+		return column - 1;
+	}
+
+	/**
+	 * @param aTarget
+	 *            the target of a relationship of the workbook.
+	 * @return the name of the targeted ZIP entry.
+	 */
+	private static String resolveTarget(String aTarget) {
+		return aTarget.startsWith("/") ? aTarget.substring(1) : "xl/" + aTarget;
+	}
+
+	/**
+	 * <p>
+	 * The number of columns to read per row.
+	 * </p>
+	 */
+	private int columnCount;
+
+	/**
+	 * <p>
+	 * The XLSX file (a ZIP archive).
+	 * </p>
+	 */
+	private ZipFile file;
+
+	/**
+	 * <p>
+	 * The shared strings table (memory-mapped).
+	 * </p>
+	 */
+	private SharedStringsTable sharedStrings;
+
+	/**
+	 * <p>
+	 * The reader of the sheet XML.
+	 * </p>
+	 */
+	private XMLStreamReader sheet;
+
+	/**
+	 * <p>
+	 * The stream of the sheet XML.
+	 * </p>
+	 */
+	private InputStream sheetStream;
+
+	/**
+	 * <p>
+	 * Default constructor: open the file, load the shared strings and position
+	 * the reader on the first row of the first sheet.
+	 * </p>
+	 * 
+	 * @param aFile
+	 *            the XLSX file to read.
+	 * @param aColumnCount
+	 *            the number of columns to read per row (the next ones are
+	 *            ignored).
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	public XLSXSheetReader(Path aFile, int aColumnCount) throws IOException {
+		columnCount = aColumnCount;
+		file = new ZipFile(aFile.toFile());
+		try {
+			Map<String, String> targets = new HashMap<>();
+			String sharedStringsTarget = null;
+			XMLStreamReader relationships = openEntry("xl/_rels/workbook.xml.rels");
+			try {
+				while (relationships.hasNext()) {
+					if (relationships.next() == XMLStreamConstants.START_ELEMENT
+							&& "Relationship".equals(relationships.getLocalName())) {
+						String target = relationships.getAttributeValue(null, "Target");
+						targets.put(relationships.getAttributeValue(null, "Id"), target);
+						if (relationships.getAttributeValue(null, "Type").endsWith("/sharedStrings")) {
+							sharedStringsTarget = target;
+						}
+					}
+				}
+			} finally {
+				relationships.close();
+			}
+			sharedStrings = new SharedStringsTable();
+			if (sharedStringsTarget != null) {
+				loadSharedStrings(resolveTarget(sharedStringsTarget));
+			}
+			sharedStrings.complete();
+			String sheetTarget = null;
+			XMLStreamReader workbook = openEntry("xl/workbook.xml");
+			try {
+				while (sheetTarget == null && workbook.hasNext()) {
+					if (workbook.next() == XMLStreamConstants.START_ELEMENT && "sheet".equals(workbook.getLocalName())) {
+						for (int i = 0; i < workbook.getAttributeCount(); i++) {
+							if ("id".equals(workbook.getAttributeLocalName(i))) {
+								sheetTarget = targets.get(workbook.getAttributeValue(i));
+							}
+						}
+					}
+				}
+			} finally {
+				workbook.close();
+			}
+			if (sheetTarget == null) {
+				throw new IOException("No sheet found in " + aFile);
+			}
+			ZipEntry sheetEntry = file.getEntry(resolveTarget(sheetTarget));
+			sheetStream = file.getInputStream(sheetEntry);
+			sheet = XML_FACTORY.createXMLStreamReader(sheetStream);
+		} catch (XMLStreamException | RuntimeException e) {
+			closeOnError();
+			throw new IOException("Invalid XLSX file " + aFile, e);
+		} catch (IOException ioe) {
+			closeOnError();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			sheet.close();
+		} catch (XMLStreamException xmle) {
+			throw new IOException(xmle);
+		} finally {
+			try {
+				sheetStream.close();
+			} finally {
+				try {
+					file.close();
+				} finally {
+					sharedStrings.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Release what the constructor opened before it failed.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be closed.
+	 */
+	private void closeOnError() throws IOException {
+		try {
+			file.close();
+		} finally {
+			if (sharedStrings != null) {
+				sharedStrings.close();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Load the shared strings table: the text of the rich text runs of each
+	 * string is concatenated, the phonetic runs are ignored.
+	 * </p>
+	 * 
+	 * @param anEntryName
+	 *            the name of the shared strings entry.
+	 * @throws IOException
+	 *             if the entry cannot be read.
+	 * @throws XMLStreamException
+	 *             if the entry is not valid XML.
+	 */
+	private void loadSharedStrings(String anEntryName) throws IOException, XMLStreamException {
+		XMLStreamReader reader = openEntry(anEntryName);
+		try {
+			StringBuilder text = new StringBuilder();
+			boolean phonetic = false;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if ("si".equals(name)) {
+						text.setLength(0);
+					} else if ("rPh".equals(name)) {
+						phonetic = true;
+					} else if ("t".equals(name) && !phonetic) {
+						text.append(reader.getElementText());
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					String name = reader.getLocalName();
+					if ("si".equals(name)) {
+						sharedStrings.add(text.toString());
+					} else if ("rPh".equals(name)) {
+						phonetic = false;
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read the next row of the sheet.
+	 * </p>
+	 * 
+	 * @return the text of the cells of the row (<code>null</code> for the empty
+	 *         cells) or <code>null</code> once the sheet is fully read.
+	 * @throws IOException
+	 *             if the sheet XML is not valid.
+	 */
+	public String[] nextRow() throws IOException {
+		try {
+			while (sheet.hasNext()) {
+				if (sheet.next() == XMLStreamConstants.START_ELEMENT && "row".equals(sheet.getLocalName())) {
+					return readRow();
+				}
+			}
+			return null;
+		} catch (XMLStreamException xmle) {
+			throw new IOException("Invalid sheet XML.", xmle);
+		}
+	}
+
+	/**
+	 * @param anEntryName
+	 *            the name of a ZIP entry.
+	 * @return a StAX reader of the entry.
+	 * @throws IOException
+	 *             if the entry is missing or cannot be read.
+	 * @throws XMLStreamException
+	 *             if the reader cannot be created.
+	 */
+	private XMLStreamReader openEntry(String anEntryName) throws IOException, XMLStreamException {
+		ZipEntry entry = file.getEntry(anEntryName);
+		if (entry == null) {
+			throw new IOException("Missing XLSX entry: " + anEntryName);
+		}
+		return XML_FACTORY.createXMLStreamReader(file.getInputStream(entry));
+	}
+
+	/**
+	 * <p>
+	 * Read the cells of the current row, the reader being on its start element.
+	 * </p>
+	 * 
+	 * @return the text of the cells of the row.
+	 * @throws XMLStreamException
+	 *             if the sheet XML is not valid.
+	 */
+	private String[] readRow() throws XMLStreamException {
+		String[] cells = new String[columnCount];
+		int nextColumn = 0;
+		int depth = 1;
+		int column = -1;
+		String type = null;
+		StringBuilder text = new StringBuilder();
+		while (depth > 0) {
+			int event = sheet.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				String name = sheet.getLocalName();
+				if ("c".equals(name)) {
+					String reference = sheet.getAttributeValue(null, "r");
+					column = reference == null ? nextColumn : getColumnIndex(reference);
+					type = sheet.getAttributeValue(null, "t");
+					text.setLength(0);
+				} else if ("v".equals(name) || "t".equals(name)) {
+					text.append(sheet.getElementText());
+					depth--;
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+				if ("c".equals(sheet.getLocalName())) {
+					if (column >= 0 && column < columnCount && text.length() > 0) {
+						cells[column] = "s".equals(type) ? sharedStrings.get(Integer.parseInt(text.toString().trim()))
+								: text.toString();
+					}
+					nextColumn = column + 1;
+				}
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * @param aColumnCount
+	 *            the number of columns to read per the next rows (e.g. once the
+	 *            header was read).
+	 */
+	public void setColumnCount(int aColumnCount) {
+		columnCount = aColumnCount;
+	}
+}
@@ -0,0 +1,47 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.data.importer.AccessImporter;
+import com.bsb.avionics.data.importer.DataImporter;
+import com.bsb.avionics.model.ProductStore;
+
+/**
+ * <p>
+ * Compare the throughput of the Access importer when the database pages are
+ * read from the disk and when the whole file is loaded in memory first.
+ * Arguments: the MDB/ACCDB file, then the number of runs (default: 3).
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class AccessReaderBenchmark {
+
+	public static void main(String[] args) {
+		Logger logger = LogManager.getLogger();
+		Path file = Paths.get(args[0]);
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		for (int run = 1; run <= runs; run++) {
+			logger.info("Run #" + run);
+			measure(logger, "File channel", new AccessImporter(file, false));
+			measure(logger, "Memory channel", new AccessImporter(file, true));
+		}
+	}
+
+	private static void measure(Logger aLogger, String aName, DataImporter anImporter) {
+		long t0 = System.nanoTime();
+		ProductStore store = anImporter.collect(ProductStore.toProductStore());
+		long elapsed = Math.max(1L, (System.nanoTime() - t0) / 1000000L);
+		int productCount = store.size();
+		aLogger.info(aName + ": " + productCount + " products in " + elapsed + " ms ("
+				+ productCount * 1000L / elapsed + " products/s).");
+	}
+}
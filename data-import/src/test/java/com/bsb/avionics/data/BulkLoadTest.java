@@ -0,0 +1,131 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.data.access.BulkProductLoader;
+import com.bsb.avionics.model.Product;
+
+/**
+ * @author Marc PEZZETTI
+ *
+ */
+public class BulkLoadTest {
+
+	public static void main(String[] args) {
+		Logger logger = LogManager.getLogger();
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:bulk;MODE=Oracle")) {
+			connection.setAutoCommit(false);
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE SEQUENCE G_PNM_AUTO_KEY");
+				statement.execute("CREATE SEQUENCE G_APM_AUTO_KEY");
+				statement.execute("CREATE SEQUENCE G_MFG_AUTO_KEY START WITH 10");
+				statement.execute("CREATE SEQUENCE G_UOM_AUTO_KEY START WITH 10");
+				statement.execute("CREATE TABLE MANUFACTURER (MFG_AUTO_KEY NUMBER, DESCRIPTION VARCHAR2(50), "
+						+ "MFG_CODE VARCHAR2(20))");
+				statement.execute("CREATE TABLE UOM_CODES (UOM_AUTO_KEY NUMBER, UOM_CODE VARCHAR2(255))");
+				statement.execute("CREATE TABLE PARTS_MASTER (PNM_AUTO_KEY NUMBER, PN VARCHAR2(40), "
+						+ "PN_UPPER VARCHAR2(40), DESCRIPTION VARCHAR2(50), DESCRIPTION_UPPER VARCHAR2(50), "
+						+ "MFG_AUTO_KEY NUMBER, UOM_AUTO_KEY NUMBER, NOTES CLOB, REMARKS VARCHAR2(50), "
+						+ "SERIALIZED CHAR(1))");
+				statement.execute("CREATE TABLE ALTERNATES_PARTS_MASTER (APM_AUTO_KEY NUMBER, PNM_AUTO_KEY NUMBER, "
+						+ "ALT_PNM_AUTO_KEY NUMBER)");
+				// H2 has no global temporary table: a plain table is enough here.
+				statement.execute("CREATE TABLE PARTS_STAGING (SEQ_NO NUMBER NOT NULL, PN VARCHAR2(40), "
+						+ "PN_UPPER VARCHAR2(40), DESCRIPTION VARCHAR2(50), DESCRIPTION_UPPER VARCHAR2(50), "
+						+ "MFG_CODE VARCHAR2(20), UOM_CODE VARCHAR2(255), NOTES VARCHAR2(4000), ALT_PN VARCHAR2(40), "
+						+ "ALT_PN_UPPER VARCHAR2(40), MFG_AUTO_KEY NUMBER, UOM_AUTO_KEY NUMBER, ACTION CHAR(1), "
+						+ "PNM_AUTO_KEY NUMBER, BASE_PNM_AUTO_KEY NUMBER, ALT_PNM_AUTO_KEY NUMBER)");
+				statement.execute("INSERT INTO MANUFACTURER VALUES (1, ' ', 'BOEING')");
+				statement.execute("INSERT INTO UOM_CODES VALUES (1, 'EA')");
+				statement.execute("INSERT INTO PARTS_MASTER VALUES (G_PNM_AUTO_KEY.NEXTVAL, 'PN-1', 'PN-1', "
+						+ "'Existing', 'EXISTING', 1, 1, NULL, NULL, NULL)");
+			}
+			connection.commit();
+
+			List<Product> products = new ArrayList<>();
+			products.add(product("PN-1", "BOEING", null));
+			products.add(product("PN-1", "AIRBUS", "PN-1A"));
+			products.add(product("PN-2", "AIRBUS", "PN-2A"));
+			products.add(product("PN-2", "AIRBUS", null));
+			products.add(product("PN-2", "THALES", null));
+			products.add(product("PN-3", "THALES", "PN-2"));
+			// PN-5 is known from its first product on, as the alternate PN of PN-4.
+			products.add(product("PN-4", "AIRBUS", "PN-5"));
+			products.add(product("PN-5", "THALES", null));
+			products.add(product("PN-5", "AIRBUS", null));
+			new BulkProductLoader(connection, 2).load(products);
+
+			// The keys depend on the order of the set-based updates: the rows are
+			// compared by PN and manufacturer.
+			List<String> expectedParts = Arrays.asList("PN-1 / AIRBUS / OCDIA", "PN-1 / BOEING / null",
+					"PN-1A / AIRBUS / OCDIA", "PN-2 / AIRBUS / null", "PN-2 / THALES / OCDIA", "PN-2A / AIRBUS / OCDIA",
+					"PN-3 / THALES / null", "PN-4 / AIRBUS / null", "PN-5 / AIRBUS / OCDIA", "PN-5 / THALES / OCDIA");
+			List<String> expectedAlternates = Arrays.asList("PN-1 / AIRBUS -> PN-1A / AIRBUS",
+					"PN-1 / BOEING -> PN-1 / AIRBUS", "PN-2 / AIRBUS -> PN-2 / THALES",
+					"PN-2 / AIRBUS -> PN-2A / AIRBUS", "PN-4 / AIRBUS -> PN-5 / AIRBUS", "PN-5 / AIRBUS -> PN-5 / THALES");
+			List<String> parts = new ArrayList<>();
+			List<String> alternates = new ArrayList<>();
+			try (Statement statement = connection.createStatement()) {
+				try (ResultSet result = statement.executeQuery("SELECT P.PN, M.MFG_CODE, P.REMARKS FROM PARTS_MASTER P "
+						+ "JOIN MANUFACTURER M ON M.MFG_AUTO_KEY = P.MFG_AUTO_KEY")) {
+					while (result.next()) {
+						parts.add(result.getString(1) + " / " + result.getString(2) + " / " + result.getString(3));
+					}
+				}
+				try (ResultSet result = statement.executeQuery("SELECT P.PN, M.MFG_CODE, AP.PN, AM.MFG_CODE "
+						+ "FROM ALTERNATES_PARTS_MASTER A JOIN PARTS_MASTER P ON P.PNM_AUTO_KEY = A.PNM_AUTO_KEY "
+						+ "JOIN MANUFACTURER M ON M.MFG_AUTO_KEY = P.MFG_AUTO_KEY "
+						+ "JOIN PARTS_MASTER AP ON AP.PNM_AUTO_KEY = A.ALT_PNM_AUTO_KEY "
+						+ "JOIN MANUFACTURER AM ON AM.MFG_AUTO_KEY = AP.MFG_AUTO_KEY")) {
+					while (result.next()) {
+						alternates.add(result.getString(1) + " / " + result.getString(2) + " -> "
+								+ result.getString(3) + " / " + result.getString(4));
+					}
+				}
+			}
+			boolean partsMatch = matches(logger, "PARTS_MASTER", expectedParts, parts);
+			boolean alternatesMatch = matches(logger, "ALTERNATES_PARTS_MASTER", expectedAlternates, alternates);
+			if (!partsMatch || !alternatesMatch) {
+				System.exit(1);
+			}
+			logger.info("Bulk load checked: " + parts.size() + " parts and " + alternates.size() + " alternates.");
+		} catch (SQLException e) {
+			logger.error("Bulk load failed.", e);
+			System.exit(1);
+		}
+	}
+
+	private static boolean matches(Logger aLogger, String aTable, List<String> someExpectedRows,
+			List<String> someRows) {
+		Collections.sort(someRows);
+		if (someRows.equals(someExpectedRows)) {
+			return true;
+		}
+		aLogger.error(aTable + " rows: " + someRows + ", expected: " + someExpectedRows);
+		return false;
+	}
+
+	private static Product product(String aPN, String aManufacturer, String anAlternatePN) {
+		Product product = new Product();
+		product.setPartNumber(aPN);
+		product.setDescription("Description of " + aPN);
+		product.setManufacturer(aManufacturer);
+		product.setUnitOfMeasure("EA");
+		product.setAlternatePartNumber(anAlternatePN);
+		return product;
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.model.Product;
+import com.bsb.avionics.model.ProductStore;
+
+/**
+ * <p>
+ * Compare the heap used by a map of product sets and by a
+ * {@link ProductStore} holding the same synthetic catalog. Arguments: the
+ * number of products (default: 1000000).
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class ProductStoreBenchmark {
+
+	public static void main(String[] args) {
+		Logger logger = LogManager.getLogger();
+		int productCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		long before = usedHeap();
+		Map<String, Set<Product>> productsByPN = new HashMap<>();
+		for (int i = 0; i < productCount; i++) {
+			Product product = newProduct(i);
+			productsByPN.computeIfAbsent(product.getPartNumber(), pn -> new HashSet<>()).add(product);
+		}
+		long mapHeap = usedHeap() - before;
+		logger.info("Map of sets: " + productsByPN.size() + " PNs, " + mapHeap / 1024 / 1024 + " MB.");
+		productsByPN = null;
+
+		before = usedHeap();
+		ProductStore store = new ProductStore();
+		for (int i = 0; i < productCount; i++) {
+			store.add(newProduct(i));
+		}
+		long storeHeap = usedHeap() - before;
+		logger.info("Product store: " + store.getPartNumberCount() + " PNs, " + storeHeap / 1024 / 1024 + " MB ("
+				+ mapHeap / Math.max(1L, storeHeap) + "x smaller).");
+	}
+
+	private static Product newProduct(int anIndex) {
+		// Fresh strings, as read from a file.
+		Product product = new Product();
+		product.setPartNumber(new String("PN-" + anIndex / 2));
+		product.setDescription(new String("DESCRIPTION OF PART " + anIndex % 50000));
+		product.setManufacturer(new String("MFG" + anIndex % 500));
+		product.setUnitOfMeasure(new String("EA"));
+		product.setNote(new String(""));
+		product.setAlternatePartNumber(anIndex % 10 == 0 ? new String("ALT-" + anIndex) : null);
+		return product;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
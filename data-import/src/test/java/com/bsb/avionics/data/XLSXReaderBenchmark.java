@@ -0,0 +1,56 @@
+/**
+ * 
+ */
+package com.bsb.avionics.data;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.bsb.avionics.data.importer.ParallelXLSXDataImporter;
+import com.bsb.avionics.data.importer.XLSXDataImporter;
+import com.bsb.avionics.model.Product;
+import com.bsb.avionics.model.ProductStore;
+
+/**
+ * <p>
+ * Compare the POI streaming reader and the StAX reader, sequential (streamed)
+ * and parallel (collected), on a XLSX file. Arguments: the XLSX file, then the
+ * number of runs (default: 3).
+ * </p>
+ * 
+ * @author Marc PEZZETTI
+ *
+ */
+public class XLSXReaderBenchmark {
+
+	public static void main(String[] args) {
+		Logger logger = LogManager.getLogger();
+		Path file = Paths.get(args[0]);
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		for (int run = 1; run <= runs; run++) {
+			logger.info("Run #" + run);
+			measure(logger, "POI streaming reader",
+					() -> new XLSXDataImporter(file).collect(ProductStore.toProductStore()));
+			measure(logger, "Sequential StAX reader", () -> {
+				try (Stream<Product> products = new ParallelXLSXDataImporter(file).stream()) {
+					return products.collect(ProductStore.toProductStore());
+				}
+			});
+			measure(logger, "Parallel StAX reader",
+					() -> new ParallelXLSXDataImporter(file).collect(ProductStore.toProductStore()));
+		}
+	}
+
+	private static void measure(Logger aLogger, String aName, Supplier<ProductStore> anImport) {
+		long t0 = System.nanoTime();
+		ProductStore store = anImport.get();
+		long elapsed = System.nanoTime() - t0;
+		aLogger.info(aName + ": " + store.size() + " products, " + store.getPartNumberCount() + " PNs in "
+				+ elapsed / 1000000L + " ms.");
+	}
+}